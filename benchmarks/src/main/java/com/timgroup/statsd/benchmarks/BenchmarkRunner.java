@@ -0,0 +1,46 @@
+package com.timgroup.statsd.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching a pattern once per producer thread count, with the GC
+ * profiler attached so allocation rates are reported next to ops/us and us/op.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.timgroup.statsd.benchmarks.BenchmarkRunner [pattern] [threads...]
+ * </pre>
+ *
+ * The pattern defaults to every benchmark and the thread counts to 1, 4, 16 and 64.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] DEFAULT_THREADS = {1, 4, 16, 64};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final String pattern = args.length > 0 ? args[0] : ".*";
+        int[] threads = DEFAULT_THREADS;
+        if (args.length > 1) {
+            threads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threads[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int t : threads) {
+            final ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(pattern)
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + t + "-threads.json");
+            new Runner(options.build()).run();
+        }
+    }
+}
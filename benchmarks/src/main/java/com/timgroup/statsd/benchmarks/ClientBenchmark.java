@@ -0,0 +1,259 @@
+package com.timgroup.statsd.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.arnabk.statsd.BlockingStatsDClient;
+import com.timgroup.statsd.Counter;
+import com.timgroup.statsd.Event;
+import com.timgroup.statsd.Gauge;
+import com.timgroup.statsd.Histogram;
+import com.timgroup.statsd.MemoryTransport;
+import com.timgroup.statsd.NoOpStatsDClient;
+import com.timgroup.statsd.NonBlockingStatsDClient;
+import com.timgroup.statsd.NonBlockingStatsDClientBuilder;
+import com.timgroup.statsd.ServiceCheck;
+import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import com.timgroup.statsd.Timer;
+import com.timgroup.statsd.Transport;
+import com.timgroup.statsd.UdpTransport;
+
+/**
+ * The cost to the calling thread of every {@link StatsDClient} method, for each client
+ * implementation, with 0, 1 or 10 tags, including events, service checks and the
+ * handles returned by <code>counter</code>, <code>gauge</code>, <code>timer</code> and
+ * <code>histogram</code>, which are created once per trial. The convenience aliases
+ * such as <code>increment</code> and <code>gauge</code> only delegate to the methods
+ * measured here.
+ *
+ * <p>The <code>nonblocking-packets</code> client packs messages on the recording
+ * threads and queues whole packets, to compare with the one queue item per message
+ * of the plain <code>nonblocking</code> client.</p>
+ *
+ * <p>Clients send either over UDP to a loopback socket nobody reads, or into a
+ * {@link MemoryTransport} which only counts payloads, to separate the client's own
+ * cost from the system calls. Run through {@link BenchmarkRunner} to cover several
+ * producer thread counts and collect allocation rates.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBenchmark {
+
+    private static final double SAMPLE_RATE = 0.5;
+
+    private static final StatsDClientErrorHandler IGNORE_ERRORS = new StatsDClientErrorHandler() {
+        @Override public void handle(Exception e) { /* No-op */ }
+    };
+
+    @Param({"nonblocking", "nonblocking-packets", "blocking", "noop"})
+    public String client;
+
+    @Param({"memory", "udp"})
+    public String transport;
+
+    @Param({"0", "1", "10"})
+    public int tagCount;
+
+    private DatagramChannel receiver;
+    private StatsDClient statsd;
+    private String[] tags;
+    private Event event;
+    private ServiceCheck serviceCheck;
+    private Counter counterHandle;
+    private Gauge gaugeHandle;
+    private Timer timerHandle;
+    private Histogram histogramHandle;
+
+    @Setup
+    public void setUp() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        final Transport sink;
+        if ("udp".equals(transport)) {
+            sink = new UdpTransport("127.0.0.1", receiver.socket().getLocalPort());
+        } else {
+            sink = new MemoryTransport(UdpTransport.DEFAULT_LOOPBACK_PAYLOAD_SIZE, false);
+        }
+        if ("nonblocking".equals(client)) {
+            statsd = new NonBlockingStatsDClient("my.prefix", sink, new String[] {"env:bench"}, IGNORE_ERRORS);
+        } else if ("nonblocking-packets".equals(client)) {
+            statsd = new NonBlockingStatsDClientBuilder()
+                    .withPrefix("my.prefix")
+                    .withTransport(sink)
+                    .withConstantTags("env:bench")
+                    .withErrorHandler(IGNORE_ERRORS)
+                    .withThreadLocalPackets(true)
+                    .build();
+        } else if ("blocking".equals(client)) {
+            statsd = new BlockingStatsDClient("my.prefix", sink, new String[] {"env:bench"}, IGNORE_ERRORS);
+        } else {
+            statsd = new NoOpStatsDClient();
+        }
+        tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = "tag" + i + ":value" + i;
+        }
+        event = Event.builder()
+                .withTitle("bench.event")
+                .withText("Something happened\nover two lines")
+                .withHostname("bench-host")
+                .withAlertType(Event.AlertType.INFO)
+                .build();
+        serviceCheck = ServiceCheck.builder()
+                .withName("bench.check")
+                .withStatus(ServiceCheck.Status.OK)
+                .withHostname("bench-host")
+                .withTags(tags)
+                .build();
+        counterHandle = statsd.counter("bench.handle.count", tags);
+        gaugeHandle = statsd.gauge("bench.handle.gauge", tags);
+        timerHandle = statsd.timer("bench.handle.time", tags);
+        histogramHandle = statsd.histogram("bench.handle.histogram", tags);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        statsd.stop();
+        receiver.close();
+    }
+
+    @Benchmark
+    public void count() {
+        statsd.count("bench.count", 42, tags);
+    }
+
+    @Benchmark
+    public void countSampled() {
+        statsd.count("bench.count", 42, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        statsd.incrementCounter("bench.increment", tags);
+    }
+
+    @Benchmark
+    public void incrementCounterSampled() {
+        statsd.incrementCounter("bench.increment", SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void decrementCounter() {
+        statsd.decrementCounter("bench.decrement", tags);
+    }
+
+    @Benchmark
+    public void decrementCounterSampled() {
+        statsd.decrementCounter("bench.decrement", SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordGaugeValueLong() {
+        statsd.recordGaugeValue("bench.gauge", 1234L, tags);
+    }
+
+    @Benchmark
+    public void recordGaugeValueLongSampled() {
+        statsd.recordGaugeValue("bench.gauge", 1234L, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordGaugeValueDouble() {
+        statsd.recordGaugeValue("bench.gauge", 12.345, tags);
+    }
+
+    @Benchmark
+    public void recordGaugeValueDoubleSampled() {
+        statsd.recordGaugeValue("bench.gauge", 12.345, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordExecutionTime() {
+        statsd.recordExecutionTime("bench.time", 25, tags);
+    }
+
+    @Benchmark
+    public void recordExecutionTimeSampled() {
+        statsd.recordExecutionTime("bench.time", 25, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordHistogramValueLong() {
+        statsd.recordHistogramValue("bench.histogram", 15L, tags);
+    }
+
+    @Benchmark
+    public void recordHistogramValueLongSampled() {
+        statsd.recordHistogramValue("bench.histogram", 15L, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordHistogramValueDouble() {
+        statsd.recordHistogramValue("bench.histogram", 15.5, tags);
+    }
+
+    @Benchmark
+    public void recordHistogramValueDoubleSampled() {
+        statsd.recordHistogramValue("bench.histogram", 15.5, SAMPLE_RATE, tags);
+    }
+
+    @Benchmark
+    public void recordEvent() {
+        statsd.recordEvent(event, tags);
+    }
+
+    @Benchmark
+    public void recordServiceCheckRun() {
+        statsd.recordServiceCheckRun(serviceCheck);
+    }
+
+    @Benchmark
+    public void counterHandleCount() {
+        counterHandle.count(42);
+    }
+
+    @Benchmark
+    public void gaugeHandleRecordLong() {
+        gaugeHandle.record(1234L);
+    }
+
+    @Benchmark
+    public void gaugeHandleRecordDouble() {
+        gaugeHandle.record(12.345);
+    }
+
+    @Benchmark
+    public void timerHandleRecord() {
+        timerHandle.record(25);
+    }
+
+    @Benchmark
+    public void histogramHandleRecordLong() {
+        histogramHandle.record(15L);
+    }
+
+    @Benchmark
+    public void histogramHandleRecordDouble() {
+        histogramHandle.record(15.5);
+    }
+}
@@ -0,0 +1,96 @@
+package com.timgroup.statsd.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.timgroup.statsd.UdpTransport;
+
+/**
+ * The cost of sending one datagram over loopback: the sender's old path, an unconnected
+ * channel fed from a heap buffer, against {@link UdpTransport}'s connected channel fed
+ * from the direct buffers the client now keeps.
+ *
+ * <p>Nothing reads the datagrams; the kernel drops them once the receive buffer is
+ * full, which costs the sender nothing.</p>
+ *
+ * <p>So far the three paths have come out within each other's error bars, at around
+ * 3 microseconds a datagram, and their order changes from one run to the next.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class DatagramSendBenchmark {
+
+    @Param({"64", "1432", "8192"})
+    public int payloadSize;
+
+    private DatagramChannel receiver;
+    private InetSocketAddress address;
+    private DatagramChannel unconnected;
+    private UdpTransport transport;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        address = new InetSocketAddress("127.0.0.1", receiver.socket().getLocalPort());
+        unconnected = DatagramChannel.open();
+        transport = new UdpTransport("127.0.0.1", address.getPort(), payloadSize);
+
+        final byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        heapBuffer = ByteBuffer.allocate(payloadSize);
+        heapBuffer.put(payload);
+        directBuffer = ByteBuffer.allocateDirect(payloadSize);
+        directBuffer.put(payload);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        transport.close();
+        unconnected.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    public int unconnectedHeapBuffer() throws IOException {
+        heapBuffer.clear();
+        return unconnected.send(heapBuffer, address);
+    }
+
+    @Benchmark
+    public int connectedHeapBuffer() throws IOException {
+        heapBuffer.clear();
+        transport.write(heapBuffer);
+        return heapBuffer.position();
+    }
+
+    @Benchmark
+    public int connectedDirectBuffer() throws IOException {
+        directBuffer.clear();
+        transport.write(directBuffer);
+        return directBuffer.position();
+    }
+}
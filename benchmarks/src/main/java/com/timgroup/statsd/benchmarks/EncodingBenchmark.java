@@ -0,0 +1,86 @@
+package com.timgroup.statsd.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.util.Precision;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.timgroup.statsd.MessageEncoder;
+
+/**
+ * The cost of rendering one message with {@link MessageEncoder}, by value type and
+ * tag count, next to the <code>String.format</code> rendering the clients used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingBenchmark {
+
+    private static final byte[] PREFIX = "my.prefix.".getBytes();
+    private static final byte[] CONSTANT_TAGS = "|#env:bench".getBytes();
+
+    @Param({"0", "1", "10"})
+    public int tagCount;
+
+    private final MessageEncoder encoder = new MessageEncoder();
+    private String[] tags;
+
+    @Setup
+    public void setUp() {
+        tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = "tag" + i + ":value" + i;
+        }
+    }
+
+    @Benchmark
+    public int encodeLong() {
+        encoder.reset().put(PREFIX).putString("bench.count").put(':').putLong(1234567L).put('|').put('c');
+        return encoder.putTags(CONSTANT_TAGS, tags).length();
+    }
+
+    @Benchmark
+    public int encodeDouble() {
+        encoder.reset().put(PREFIX).putString("bench.gauge").put(':').putDouble(12.345678).put('|').put('g');
+        return encoder.putTags(CONSTANT_TAGS, tags).length();
+    }
+
+    @Benchmark
+    public int encodeDoubleSampled() {
+        encoder.reset().put(PREFIX).putString("bench.gauge").put(':').putDouble(12.345678).put('|').put('g');
+        encoder.put('|').putDouble(0.5);
+        return encoder.putTags(CONSTANT_TAGS, tags).length();
+    }
+
+    @Benchmark
+    public int formatLong() {
+        return String.format("%s%s:%d|c%s", "my.prefix.", "bench.count", 1234567L, tagString()).getBytes().length;
+    }
+
+    @Benchmark
+    public int formatDouble() {
+        return String.format(Locale.US, "%s%s:%f|g%s", "my.prefix.", "bench.gauge", Precision.round(12.345678, 6), tagString()).getBytes().length;
+    }
+
+    private String tagString() {
+        final StringBuilder sb = new StringBuilder("|#env:bench");
+        for (int n = tags.length - 1; n >= 0; n--) {
+            sb.append(',').append(tags[n]);
+        }
+        return sb.toString();
+    }
+}
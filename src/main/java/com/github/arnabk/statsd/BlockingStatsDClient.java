@@ -1,14 +1,26 @@
 package com.github.arnabk.statsd;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetSocketAddress;
-
-import org.apache.commons.math3.util.Precision;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.timgroup.statsd.Counter;
+import com.timgroup.statsd.Event;
+import com.timgroup.statsd.Gauge;
+import com.timgroup.statsd.Histogram;
+import com.timgroup.statsd.MessageEncoder;
+import com.timgroup.statsd.Sampler;
+import com.timgroup.statsd.Samplers;
+import com.timgroup.statsd.ServiceCheck;
 import com.timgroup.statsd.StatsDClient;
 import com.timgroup.statsd.StatsDClientErrorHandler;
 import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.TagCache;
+import com.timgroup.statsd.Timer;
+import com.timgroup.statsd.Transport;
+import com.timgroup.statsd.UdpTransport;
 
 /**
  * A simple StatsD client implementation facilitating metrics recording.
@@ -32,20 +44,44 @@ import com.timgroup.statsd.StatsDClientException;
  * on any StatsD clients.</p>
  * 
  * <p>This class is a blocking implementation. It is preferable to use with already existing threading systems or logging systems like slf4j(log4j implementation)</p>
+ *
+ * <p>Each calling thread encodes its messages into buffers of its own, reused from one
+ * message to the next, and hands them to the transport directly, so recording a data
+ * point costs one write to a connected socket and, once warmed up, no allocation.</p>
  * 
  * @author Arnab 
  *
  */
 public class BlockingStatsDClient implements StatsDClient {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] COUNTER = "|c".getBytes(UTF_8);
+    private static final byte[] GAUGE = "|g".getBytes(UTF_8);
+    private static final byte[] TIMER = "|ms".getBytes(UTF_8);
+    private static final byte[] HISTOGRAM = "|h".getBytes(UTF_8);
+    private static final byte[] EVENT = "_e{".getBytes(UTF_8);
+    private static final byte[] SERVICE_CHECK = "_sc|".getBytes(UTF_8);
+
+    /* Marks data points sent without a sample rate */
+    private static final double NO_SAMPLE_RATE = -1;
+
 	protected static final StatsDClientErrorHandler NO_OP_HANDLER = new StatsDClientErrorHandler() {
         @Override public void handle(Exception e) { /* No-op */ }
     };
 
     protected final String prefix;
-    protected final DatagramSocket clientSocket;
+    protected final Transport transport;
     protected final StatsDClientErrorHandler handler;
     protected final String[] constantTags;
+    private final TagCache tagCache;
+    private final Sampler sampler;
+    private final byte[] prefixBytes;
+    private final ThreadLocal<SendBuffer> sendBuffers;
+    private final int maxPayloadSize;
+
+    /* The batch of every thread which has sent through this client, null unless batching */
+    private final Queue<SendBuffer> batchBuffers;
 
     /**
      * Create a new StatsD client communicating with a StatsD instance on the
@@ -120,6 +156,63 @@ public class BlockingStatsDClient implements StatsDClient {
      *     if the client could not be started
      */
     public BlockingStatsDClient(String prefix, String hostname, int port, String[] constantTags, StatsDClientErrorHandler errorHandler) throws StatsDClientException {
+        this(prefix, udpTransport(hostname, port), constantTags, errorHandler);
+    }
+
+    /**
+     * Create a new StatsD client sending through the given transport, for instance a
+     * {@link com.timgroup.statsd.UnixSocketTransport} to reach a local agent. All
+     * messages send via this client will have their keys prefixed with the specified
+     * string. All exceptions thrown during usage are passed to the specified handler
+     * and then consumed. The transport is closed when the client is stopped.
+     *
+     * @param prefix
+     *     the prefix to apply to keys sent via this client
+     * @param transport
+     *     the transport carrying messages to the StatsD server
+     * @param constantTags
+     *     tags to be added to all content sent
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage
+     */
+    public BlockingStatsDClient(String prefix, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler) {
+        this(prefix, transport, constantTags, errorHandler, Samplers.random());
+    }
+
+    /**
+     * Create a new StatsD client sending through the given transport and deciding
+     * which sampled data points to send with the given sampler, for instance a
+     * {@link Samplers#seeded(long)} one for reproducible tests.
+     *
+     * @param prefix
+     *     the prefix to apply to keys sent via this client
+     * @param transport
+     *     the transport carrying messages to the StatsD server
+     * @param constantTags
+     *     tags to be added to all content sent
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage
+     * @param sampler
+     *     decides which data points recorded with a sample rate are sent
+     */
+    public BlockingStatsDClient(String prefix, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler, Sampler sampler) {
+        this(prefix, transport, constantTags, errorHandler, sampler, TagCache.DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Create a new StatsD client as configured by the given builder.
+     *
+     * @throws StatsDClientException
+     *     if the client could not be started
+     * @see BlockingStatsDClientBuilder
+     */
+    BlockingStatsDClient(BlockingStatsDClientBuilder builder) throws StatsDClientException {
+        this(builder.prefix, builder.transportSettings.open(), builder.constantTags, builder.errorHandler, builder.sampler,
+                builder.tagCacheSize, builder.batching);
+    }
+
+    private BlockingStatsDClient(String prefix, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler,
+                                 Sampler sampler, int tagCacheSize, boolean batching) {
         if(prefix != null && prefix.length() > 0) {
             this.prefix = String.format("%s.", prefix);
         } else {
@@ -130,10 +223,27 @@ public class BlockingStatsDClient implements StatsDClient {
             constantTags = null;
         }
         this.constantTags = constantTags;
+        this.tagCache = new TagCache(constantTags, tagCacheSize);
+        this.sampler = sampler;
+        this.transport = transport;
+        this.prefixBytes = this.prefix.getBytes(UTF_8);
+        this.maxPayloadSize = transport == null ? UdpTransport.DEFAULT_REMOTE_PAYLOAD_SIZE : transport.maxPayloadSize();
+        this.batchBuffers = batching ? new ConcurrentLinkedQueue<SendBuffer>() : null;
+        this.sendBuffers = new ThreadLocal<SendBuffer>() {
+            @Override protected SendBuffer initialValue() {
+                final SendBuffer buffer = new SendBuffer(maxPayloadSize);
+                if (batchBuffers != null) {
+                    flushAbandonedBatches();
+                    batchBuffers.add(buffer);
+                }
+                return buffer;
+            }
+        };
+    }
 
+    static Transport udpTransport(String hostname, int port) throws StatsDClientException {
         try {
-            this.clientSocket = new DatagramSocket();
-            this.clientSocket.connect(new InetSocketAddress(hostname, port));
+            return new UdpTransport(hostname, port);
         } catch (Exception e) {
             throw new StatsDClientException("Failed to start StatsD client", e);
         }
@@ -146,8 +256,15 @@ public class BlockingStatsDClient implements StatsDClient {
     @Override
     public void stop() {
     	try {
-            if (clientSocket != null) {
-                clientSocket.close();
+            if (batchBuffers != null) {
+                for (SendBuffer buffer : batchBuffers) {
+                    synchronized (buffer) {
+                        sendBatch(buffer);
+                    }
+                }
+            }
+            if (transport != null) {
+                transport.close();
             }
         }
         catch (Exception e) {
@@ -158,32 +275,33 @@ public class BlockingStatsDClient implements StatsDClient {
     }
 
     /**
-     * Generate a suffix conveying the given tag list to the client
+     * Send the messages the calling thread has batched so far. Batches of other
+     * threads are left alone. Does nothing unless the client was built to batch.
+     *
+     * @see BlockingStatsDClientBuilder#withBatching(boolean)
      */
-    String tagString(String[] tags) {
-        boolean have_call_tags = (tags != null && tags.length > 0);
-        boolean have_constant_tags = (constantTags != null && constantTags.length > 0);
-        if(!have_call_tags && !have_constant_tags) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder("|#");
-        if(have_constant_tags) {
-            for(int n=constantTags.length - 1; n>=0; n--) {
-                sb.append(constantTags[n]);
-                if(n > 0 || have_call_tags) {
-                    sb.append(",");
-                }
-            }
-        }
-        if (have_call_tags) {
-            for(int n=tags.length - 1; n>=0; n--) {
-                sb.append(tags[n]);
-                if(n > 0) {
-                    sb.append(",");
-                }
+    public void flush() {
+        if (batchBuffers != null) {
+            final SendBuffer buffer = sendBuffers.get();
+            synchronized (buffer) {
+                sendBatch(buffer);
             }
         }
-        return sb.toString();
+    }
+
+    /**
+     * Same as {@link #stop()}, for use in try-with-resources blocks.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Generate a suffix conveying the given tag list to the client
+     */
+    String tagString(String[] tags) {
+        return tagCache.renderString(tags);
     }
 
     /**
@@ -199,14 +317,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void count(String aspect, long delta, String... tags) {
-    	blockingSend(String.format("%s%s:%d|c%s", prefix, aspect, delta, tagString(tags)));
+    	send(aspect, delta, COUNTER, NO_SAMPLE_RATE, tags);
     }
     
     public void count(String aspect, long delta, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	blockingSend(String.format("%s%s:%d|c|%f%s", prefix, aspect, delta, sampleRate, tagString(tags)));
+    	send(aspect, delta, COUNTER, sampleRate, tags);
     }
 
     /**
@@ -282,14 +400,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(String aspect, double value, String... tags) {
-    	blockingSend(String.format("%s%s:%f|g%s", prefix, aspect, Precision.round(value, 6), tagString(tags)));
+    	send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
     }
     
     public void recordGaugeValue(String aspect, double value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	blockingSend(String.format("%s%s:%f|g|%f%s", prefix, aspect, Precision.round(value, 6), sampleRate, tagString(tags)));
+    	send(aspect, value, GAUGE, sampleRate, tags);
     }
 
     /**
@@ -317,14 +435,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(String aspect, long value, String... tags) {
-    	blockingSend(String.format("%s%s:%d|g%s", prefix, aspect, value, tagString(tags)));
+    	send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
     }
     
     public void recordGaugeValue(String aspect, long value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	blockingSend(String.format("%s%s:%d|g|%f%s", prefix, aspect, value, sampleRate, tagString(tags)));
+    	send(aspect, value, GAUGE, sampleRate, tags);
     }
 
     /**
@@ -352,14 +470,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordExecutionTime(String aspect, long timeInMs, String... tags) {
-        blockingSend(String.format("%s%s:%d|ms%s", prefix, aspect, timeInMs, tagString(tags)));
+        send(aspect, timeInMs, TIMER, NO_SAMPLE_RATE, tags);
     }
     
     public void recordExecutionTime(String aspect, long timeInMs, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        blockingSend(String.format("%s%s:%d|ms|%f%s", prefix, aspect, timeInMs, sampleRate, tagString(tags)));
+        send(aspect, timeInMs, TIMER, sampleRate, tags);
     }
 
     /**
@@ -387,14 +505,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordHistogramValue(String aspect, double value, String... tags) {
-    	blockingSend(String.format("%s%s:%f|h%s", prefix, aspect, Precision.round(value, 6), tagString(tags)));
+    	send(aspect, value, HISTOGRAM, NO_SAMPLE_RATE, tags);
     }
     
     public void recordHistogramValue(String aspect, double value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	blockingSend(String.format("%s%s:%f|h|%f%s", prefix, aspect, Precision.round(value, 6), sampleRate, tagString(tags)));
+    	send(aspect, value, HISTOGRAM, sampleRate, tags);
     }
 
     /**
@@ -422,14 +540,14 @@ public class BlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordHistogramValue(String aspect, long value, String... tags) {
-    	blockingSend(String.format("%s%s:%d|h%s", prefix, aspect, value, tagString(tags)));
+    	send(aspect, value, HISTOGRAM, NO_SAMPLE_RATE, tags);
     }
     
     public void recordHistogramValue(String aspect, long value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	blockingSend(String.format("%s%s:%d|h|%f%s", prefix, aspect, value, sampleRate, tagString(tags)));
+    	send(aspect, value, HISTOGRAM, sampleRate, tags);
     }
 
     /**
@@ -444,17 +562,286 @@ public class BlockingStatsDClient implements StatsDClient {
         recordHistogramValue(aspect, value, sampleRate, tags);
     }
     
+    /**
+     * Records an event, sent through the same transport as the metrics of this client.
+     * The title is prefixed like metric names.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * @param event
+     *     the event to be recorded
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    @Override
+    public void recordEvent(Event event, String... tags) {
+        final String title = escapeEventString(event.getTitle());
+        final String text = escapeEventString(event.getText());
+        final SendBuffer buffer = sendBuffers.get();
+        final MessageEncoder encoder = buffer.encoder.reset();
+        encoder.put(EVENT).putLong(prefixBytes.length + MessageEncoder.utf8Length(title))
+                .put(',').putLong(MessageEncoder.utf8Length(text)).put('}').put(':')
+                .put(prefixBytes).putString(title).put('|').putString(text);
+        if (event.getMillisSinceEpoch() != -1) {
+            encoder.put('|').put('d').put(':').putLong(event.getMillisSinceEpoch() / 1000);
+        }
+        putField(encoder, 'h', event.getHostname());
+        putField(encoder, 'k', event.getAggregationKey());
+        putField(encoder, 'p', event.getPriority());
+        putField(encoder, 's', event.getSourceTypeName());
+        putField(encoder, 't', event.getAlertType());
+        tagCache.putTags(encoder, tags);
+        blockingSend(buffer);
+    }
+
+    /**
+     * Records the run of a service check, sent through the same transport as the
+     * metrics of this client.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * @param sc
+     *     the service check run to be recorded
+     */
+    @Override
+    public void recordServiceCheckRun(ServiceCheck sc) {
+        if (!sc.hasStatus()) {
+            handler.handle(new IllegalArgumentException("Service check " + sc.getName() + " has no status"));
+            return;
+        }
+        final SendBuffer buffer = sendBuffers.get();
+        final MessageEncoder encoder = buffer.encoder.reset();
+        encoder.put(SERVICE_CHECK).putString(sc.getName()).put('|').putLong(sc.getStatus());
+        if (sc.getTimestamp() > 0) {
+            encoder.put('|').put('d').put(':').putLong(sc.getTimestamp());
+        }
+        putField(encoder, 'h', sc.getHostname());
+        tagCache.putTags(encoder, sc.getTags());
+        if (sc.getMessage() != null) {
+            putField(encoder, 'm', sc.getEscapedMessage());
+        }
+        blockingSend(buffer);
+    }
+
+    private static void putField(MessageEncoder encoder, char key, String value) {
+        if (value != null) {
+            encoder.put('|').put(key).put(':').putString(value);
+        }
+    }
+
+    private static String escapeEventString(String s) {
+        return s.replace("\n", "\\n");
+    }
+
+    /**
+     * Returns a handle on the specified counter, with the name and tags encoded once.
+     */
+    @Override
+    public Counter counter(String aspect, String... tags) {
+        final byte[] head = head(aspect);
+        final byte[] tail = tail(COUNTER, tags);
+        return new Counter() {
+            @Override public void count(long delta) {
+                send(head, delta, tail);
+            }
+            @Override public void increment() {
+                count(1);
+            }
+            @Override public void decrement() {
+                count(-1);
+            }
+        };
+    }
+
+    /**
+     * Returns a handle on the specified gauge, with the name and tags encoded once.
+     */
+    @Override
+    public Gauge gauge(String aspect, String... tags) {
+        final byte[] head = head(aspect);
+        final byte[] tail = tail(GAUGE, tags);
+        return new Gauge() {
+            @Override public void record(long value) {
+                send(head, value, tail);
+            }
+            @Override public void record(double value) {
+                send(head, value, tail);
+            }
+        };
+    }
+
+    /**
+     * Returns a handle on the specified timed operation, with the name and tags
+     * encoded once.
+     */
+    @Override
+    public Timer timer(String aspect, String... tags) {
+        final byte[] head = head(aspect);
+        final byte[] tail = tail(TIMER, tags);
+        return new Timer() {
+            @Override public void record(long timeInMs) {
+                send(head, timeInMs, tail);
+            }
+        };
+    }
+
+    /**
+     * Returns a handle on the specified histogram, with the name and tags encoded once.
+     */
+    @Override
+    public Histogram histogram(String aspect, String... tags) {
+        final byte[] head = head(aspect);
+        final byte[] tail = tail(HISTOGRAM, tags);
+        return new Histogram() {
+            @Override public void record(long value) {
+                send(head, value, tail);
+            }
+            @Override public void record(double value) {
+                send(head, value, tail);
+            }
+        };
+    }
+
+    private byte[] head(String aspect) {
+        return new MessageEncoder().put(prefixBytes).putString(aspect).put(':').toByteArray();
+    }
+
+    private byte[] tail(byte[] type, String[] tags) {
+        return new MessageEncoder().put(type).put(tagCache.render(tags)).toByteArray();
+    }
+
     private boolean isInvalidSample(double sampleRate) {
-    	return sampleRate != 1 && Math.random() > sampleRate;
+    	return sampleRate != 1 && !sampler.sample(sampleRate);
+    }
+
+    private void send(String aspect, long value, byte[] type, double sampleRate, String[] tags) {
+        final SendBuffer buffer = sendBuffers.get();
+        final MessageEncoder encoder = buffer.encoder.reset();
+        encoder.put(prefixBytes).putString(aspect).put(':').putLong(value);
+        encodeSuffix(encoder, type, sampleRate, tags);
+        blockingSend(buffer);
+    }
+
+    private void send(String aspect, double value, byte[] type, double sampleRate, String[] tags) {
+        final SendBuffer buffer = sendBuffers.get();
+        final MessageEncoder encoder = buffer.encoder.reset();
+        encoder.put(prefixBytes).putString(aspect).put(':').putDouble(value);
+        encodeSuffix(encoder, type, sampleRate, tags);
+        blockingSend(buffer);
+    }
+
+    private void send(byte[] head, long value, byte[] tail) {
+        final SendBuffer buffer = sendBuffers.get();
+        buffer.encoder.reset().put(head).putLong(value).put(tail);
+        blockingSend(buffer);
+    }
+
+    private void send(byte[] head, double value, byte[] tail) {
+        final SendBuffer buffer = sendBuffers.get();
+        buffer.encoder.reset().put(head).putDouble(value).put(tail);
+        blockingSend(buffer);
+    }
+
+    private void encodeSuffix(MessageEncoder encoder, byte[] type, double sampleRate, String[] tags) {
+        encoder.put(type);
+        if (sampleRate != NO_SAMPLE_RATE) {
+            encoder.put('|').putDouble(sampleRate);
+        }
+        tagCache.putTags(encoder, tags);
+    }
+
+    private void blockingSend(SendBuffer buffer) {
+        if (batchBuffers == null) {
+            write(buffer.fill());
+            return;
+        }
+        synchronized (buffer) {
+            if (!buffer.append(maxPayloadSize)) {
+                sendBatch(buffer);
+                if (!buffer.append(maxPayloadSize)) {
+                    /* Longer than a payload on its own, sent as it would be without batching */
+                    write(buffer.fill());
+                    buffer.direct.clear();
+                }
+            }
+        }
     }
 
-    private void blockingSend(String message) {
+    /* Must hold the buffer's lock */
+    private void sendBatch(SendBuffer buffer) {
+        if (buffer.direct.position() > 0) {
+            buffer.direct.flip();
+            write(buffer.direct);
+            buffer.direct.clear();
+        }
+    }
+
+    /* Batches of threads which have died would otherwise never be sent */
+    private void flushAbandonedBatches() {
+        for (Iterator<SendBuffer> it = batchBuffers.iterator(); it.hasNext();) {
+            final SendBuffer buffer = it.next();
+            if (!buffer.owner.isAlive()) {
+                synchronized (buffer) {
+                    sendBatch(buffer);
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private void write(ByteBuffer payload) {
         try {
-            final byte[] sendData = message.getBytes();
-            final DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length);
-            clientSocket.send(sendPacket);
+            transport.write(payload);
+            transport.flush();
         } catch (Exception e) {
             handler.handle(e);
         }
     }
+
+    /**
+     * A thread's encoder and the direct buffer its messages are handed to the
+     * transport in, both kept for every message the thread sends. A direct buffer
+     * spares the JDK copying each message into a temporary one on its way to the
+     * socket. When batching, the direct buffer holds the thread's pending batch and is
+     * guarded by the lock on this object.
+     */
+    private static final class SendBuffer {
+        final Thread owner = Thread.currentThread();
+        final MessageEncoder encoder = new MessageEncoder();
+        ByteBuffer direct;
+
+        SendBuffer(int capacity) {
+            this.direct = ByteBuffer.allocateDirect(capacity);
+        }
+
+        /**
+         * @return the buffer holding the encoded message, ready to be written
+         */
+        ByteBuffer fill() {
+            if (encoder.length() > direct.capacity()) {
+                direct = ByteBuffer.allocateDirect(encoder.length());
+            }
+            direct.clear();
+            encoder.writeTo(direct);
+            direct.flip();
+            return direct;
+        }
+
+        /**
+         * Add the encoded message to the pending batch, newline separated.
+         *
+         * @return false if the batch has no room left for the message
+         */
+        boolean append(int maxPayloadSize) {
+            final int separator = direct.position() > 0 ? 1 : 0;
+            if (direct.position() + separator + encoder.length() > Math.min(maxPayloadSize, direct.capacity())) {
+                return false;
+            }
+            if (separator > 0) {
+                direct.put((byte) '\n');
+            }
+            encoder.writeTo(direct);
+            return true;
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package com.github.arnabk.statsd;
+
+import java.util.concurrent.TimeUnit;
+
+import com.timgroup.statsd.AddressResolver;
+import com.timgroup.statsd.LazyTransport;
+import com.timgroup.statsd.Sampler;
+import com.timgroup.statsd.Samplers;
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.TagCache;
+import com.timgroup.statsd.Transport;
+import com.timgroup.statsd.UnixSocketTransport;
+
+/**
+ * Configures and creates a {@link BlockingStatsDClient}.
+ *
+ * <p>A client built without touching the tuning options behaves like one created
+ * through the {@link BlockingStatsDClient} constructors.</p>
+ */
+public final class BlockingStatsDClientBuilder {
+
+    String prefix;
+    final TransportSettings transportSettings = new TransportSettings();
+    String[] constantTags;
+    int tagCacheSize = TagCache.DEFAULT_CAPACITY;
+    StatsDClientErrorHandler errorHandler = BlockingStatsDClient.NO_OP_HANDLER;
+    Sampler sampler = Samplers.random();
+    boolean batching;
+
+    public BlockingStatsDClient build() throws StatsDClientException {
+        return new BlockingStatsDClient(this);
+    }
+
+    /**
+     * @param prefix
+     *     the prefix to apply to keys sent via the client ; Default: none
+     */
+    public BlockingStatsDClientBuilder withPrefix(final String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server ; mandatory
+     */
+    public BlockingStatsDClientBuilder withHostname(final String hostname) {
+        transportSettings.hostname = hostname;
+        return this;
+    }
+
+    /**
+     * @param port
+     *     the port of the targeted StatsD server ; mandatory
+     */
+    public BlockingStatsDClientBuilder withPort(final int port) {
+        transportSettings.port = port;
+        return this;
+    }
+
+    /**
+     * Send to an agent on this host through its Unix domain stream socket instead of
+     * UDP, in which case the host name and port are ignored. Needs Java 16 or later.
+     *
+     * @param socketPath
+     *     the file system path of the agent's socket ; Default: none, send over UDP
+     * @see UnixSocketTransport
+     */
+    public BlockingStatsDClientBuilder withUnixSocket(final String socketPath) {
+        transportSettings.socketPath = socketPath;
+        return this;
+    }
+
+    /**
+     * Send through the given transport, in which case the host name, port and socket
+     * path are ignored. The transport is closed when the client is stopped.
+     *
+     * @param transport
+     *     the transport carrying messages to the StatsD server ; Default: none, send over UDP
+     */
+    public BlockingStatsDClientBuilder withTransport(final Transport transport) {
+        transportSettings.transport = transport;
+        return this;
+    }
+
+    /**
+     * @param maxPayloadSize
+     *     the largest payload to send, in bytes ; Default: 1432 for UDP to a remote host,
+     *     8192 for UDP over loopback or a Unix socket
+     */
+    public BlockingStatsDClientBuilder withMaxPayloadSize(final int maxPayloadSize) {
+        if (maxPayloadSize < 1) {
+            throw new IllegalArgumentException("max payload size must be positive");
+        }
+        transportSettings.maxPayloadSize = maxPayloadSize;
+        return this;
+    }
+
+    /**
+     * Have each thread recording metrics collect them into a payload of its own, sent
+     * once the next message would not fit or when the thread calls
+     * {@link BlockingStatsDClient#flush()}, instead of sending every message on its
+     * own. No background thread is involved: whatever a thread has not flushed waits
+     * until it records more, until another thread starts sending through the client
+     * after it has died, or until the client is stopped.
+     *
+     * @param enabled
+     *     whether to batch messages on the recording threads ; Default: false
+     */
+    public BlockingStatsDClientBuilder withBatching(final boolean enabled) {
+        this.batching = enabled;
+        return this;
+    }
+
+    /**
+     * Build the client without resolving the host name or opening a socket, leaving
+     * both to the first thread recording a metric. Failing to open, which includes
+     * failing to resolve the host name, is reported to the error handler and retried
+     * at most once a second; metrics recorded in between are lost.
+     *
+     * @param enabled
+     *     whether to open the transport on first use ; Default: false
+     * @see LazyTransport
+     */
+    public BlockingStatsDClientBuilder withLazyStart(final boolean enabled) {
+        transportSettings.lazyStart = enabled;
+        return this;
+    }
+
+    /**
+     * @param addressResolver
+     *     turns the host name into the address sent to ; Default: {@link AddressResolver#SYSTEM}
+     * @see #withResolveInterval(long, TimeUnit)
+     */
+    public BlockingStatsDClientBuilder withAddressResolver(final AddressResolver addressResolver) {
+        if (addressResolver == null) {
+            throw new IllegalArgumentException("address resolver must be set");
+        }
+        transportSettings.addressResolver = addressResolver;
+        return this;
+    }
+
+    /**
+     * Resolve the host name again at this interval, in the background, and send to its
+     * new address once it changes. A failed resolution keeps the last address that
+     * resolved.
+     *
+     * @param interval
+     *     how often to resolve the host name, zero to resolve it only once ; Default: 0
+     */
+    public BlockingStatsDClientBuilder withResolveInterval(final long interval, final TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("resolve interval must not be negative");
+        }
+        transportSettings.resolveIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * @param constantTags
+     *     tags to be added to all content sent ; Default: none
+     */
+    public BlockingStatsDClientBuilder withConstantTags(final String... constantTags) {
+        this.constantTags = constantTags;
+        return this;
+    }
+
+    /**
+     * @param tagCacheSize
+     *     the most rendered tag sets to keep, zero to always render ; Default: 1024
+     * @see TagCache
+     */
+    public BlockingStatsDClientBuilder withTagCacheSize(final int tagCacheSize) {
+        if (tagCacheSize < 0) {
+            throw new IllegalArgumentException("tag cache size must not be negative");
+        }
+        this.tagCacheSize = tagCacheSize;
+        return this;
+    }
+
+    /**
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage ; Default: ignore errors
+     */
+    public BlockingStatsDClientBuilder withErrorHandler(final StatsDClientErrorHandler errorHandler) {
+        this.errorHandler = errorHandler == null ? BlockingStatsDClient.NO_OP_HANDLER : errorHandler;
+        return this;
+    }
+
+    /**
+     * @param sampler
+     *     decides which data points recorded with a sample rate are sent ; Default: {@link Samplers#random()}
+     */
+    public BlockingStatsDClientBuilder withSampler(final Sampler sampler) {
+        if (sampler == null) {
+            throw new IllegalArgumentException("sampler must be set");
+        }
+        this.sampler = sampler;
+        return this;
+    }
+}
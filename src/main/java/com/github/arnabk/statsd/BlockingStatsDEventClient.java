@@ -1,11 +1,11 @@
 package com.github.arnabk.statsd;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 import com.timgroup.statsd.StatsDClientErrorHandler;
 import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.TagCache;
+import com.timgroup.statsd.Transport;
 
 /** 
  * 
@@ -41,9 +41,10 @@ public class BlockingStatsDEventClient  {
         @Override public void handle(Exception e) { /* No-op */ }
     };
 
-    protected final DatagramSocket clientSocket;
+    protected final Transport transport;
     protected final StatsDClientErrorHandler handler;
     protected final String[] constantTags;
+    private final TagCache tagCache;
     protected final String hostname;
 
     /**
@@ -115,19 +116,50 @@ public class BlockingStatsDEventClient  {
      *     if the client could not be started
      */
     public BlockingStatsDEventClient(String hostname, int port, String[] constantTags, StatsDClientErrorHandler errorHandler) throws StatsDClientException {
+        this(hostname, BlockingStatsDClient.udpTransport(hostname, port), constantTags, errorHandler);
+    }
+
+    /**
+     * Create a new StatsD client sending events through the given transport, for
+     * instance a {@link com.timgroup.statsd.UnixSocketTransport} to reach a local agent.
+     * All exceptions thrown during usage are passed to the specified handler and then
+     * consumed. The transport is closed when the client is stopped.
+     *
+     * @param hostname
+     *     the host name reported with each event, or null for none
+     * @param transport
+     *     the transport carrying events to the StatsD server
+     * @param constantTags
+     *     tags to be added to all content sent (each of them should be in the format key:value)
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage
+     */
+    public BlockingStatsDEventClient(String hostname, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler) {
+        this(hostname, transport, constantTags, errorHandler, TagCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new StatsD client as configured by the given builder.
+     *
+     * @throws StatsDClientException
+     *     if the client could not be started
+     * @see StatsDEventClientBuilder
+     */
+    BlockingStatsDEventClient(StatsDEventClientBuilder builder) throws StatsDClientException {
+        this(builder.transportSettings.hostname, builder.transportSettings.open(), builder.constantTags, builder.errorHandler,
+                builder.tagCacheSize);
+    }
+
+    private BlockingStatsDEventClient(String hostname, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler,
+                                      int tagCacheSize) {
         this.handler = errorHandler;
         this.hostname = hostname;
         if(constantTags != null && constantTags.length == 0) {
             constantTags = null;
         }
         this.constantTags = constantTags;
-
-        try {
-            this.clientSocket = new DatagramSocket();
-            this.clientSocket.connect(new InetSocketAddress(hostname, port));
-        } catch (Exception e) {
-            throw new StatsDClientException("Failed to start StatsD client", e);
-        }
+        this.tagCache = new TagCache(constantTags, tagCacheSize);
+        this.transport = transport;
     }
 
     /**
@@ -135,9 +167,9 @@ public class BlockingStatsDEventClient  {
      * the socket cannot be closed.
      */
     public void stop() {
-        if (clientSocket != null) {
+        if (transport != null) {
         	try {
-        		clientSocket.close();
+        		transport.close();
         	} catch(Exception ignore) {}
         }
     }
@@ -148,29 +180,7 @@ public class BlockingStatsDEventClient  {
      * @return 
      */
     protected String tagString(String[] tags) {
-        boolean have_call_tags = (tags != null && tags.length > 0);
-        boolean have_constant_tags = (constantTags != null && constantTags.length > 0);
-        if(!have_call_tags && !have_constant_tags) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder("|#");
-        if(have_constant_tags) {
-            for(int n=constantTags.length - 1; n>=0; n--) {
-                sb.append(constantTags[n]);
-                if(n > 0 || have_call_tags) {
-                    sb.append(",");
-                }
-            }
-        }
-        if (have_call_tags) {
-            for(int n=tags.length - 1; n>=0; n--) {
-                sb.append(tags[n]);
-                if(n > 0) {
-                    sb.append(",");
-                }
-            }
-        }
-        return sb.toString();
+        return tagCache.renderString(tags);
     }
 
     /**
@@ -270,9 +280,8 @@ public class BlockingStatsDEventClient  {
 
     protected void blockingSend(String message) {
         try {
-            final byte[] sendData = message.getBytes();
-            final DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length);
-            clientSocket.send(sendPacket);
+            transport.write(ByteBuffer.wrap(message.getBytes()));
+            transport.flush();
         } catch (Exception e) {
             handler.handle(e);
         }
@@ -9,6 +9,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.timgroup.statsd.StatsDClientErrorHandler;
 import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.Transport;
 
 /** 
  * 
@@ -36,6 +37,11 @@ import com.timgroup.statsd.StatsDClientException;
  *
  * <p>As part of a clean system shutdown, the {@link #stop()} method should be invoked
  * on any StatsD clients.</p>
+ *
+ * <p>An application already sending metrics through a
+ * {@link com.timgroup.statsd.NonBlockingStatsDClient} can record events with
+ * {@link com.timgroup.statsd.StatsDClient#recordEvent} instead, which shares that
+ * client's socket and sender thread rather than opening another of each.</p>
  * 
  * @author Arnab Karmakar
  *
@@ -55,7 +61,7 @@ public final class NonBlockingStatsDEventClient extends BlockingStatsDEventClien
         }
     });
     
-    private final BlockingQueue<EventMessage> blockingQueue = new LinkedBlockingDeque<EventMessage>();
+    private final BlockingQueue<EventMessage> blockingQueue;
 
     /**
      * Create a new StatsD client communicating with a StatsD instance on the
@@ -127,6 +133,45 @@ public final class NonBlockingStatsDEventClient extends BlockingStatsDEventClien
      */
     public NonBlockingStatsDEventClient(String hostname, int port, String[] constantTags, StatsDClientErrorHandler errorHandler) throws StatsDClientException {
         super(hostname, port, constantTags, errorHandler);
+        this.blockingQueue = new LinkedBlockingDeque<EventMessage>();
+        startSender();
+    }
+
+    /**
+     * Create a new StatsD client sending events through the given transport, for
+     * instance a {@link com.timgroup.statsd.UnixSocketTransport} to reach a local agent.
+     * All exceptions thrown during usage are passed to the specified handler and then
+     * consumed. The transport is closed when the client is stopped.
+     *
+     * @param hostname
+     *     the host name reported with each event, or null for none
+     * @param transport
+     *     the transport carrying events to the StatsD server
+     * @param constantTags
+     *     tags to be added to all content sent (each of them should be in the format key:value)
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage
+     */
+    public NonBlockingStatsDEventClient(String hostname, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler) {
+        super(hostname, transport, constantTags, errorHandler);
+        this.blockingQueue = new LinkedBlockingDeque<EventMessage>();
+        startSender();
+    }
+
+    /**
+     * Create a new StatsD client as configured by the given builder.
+     *
+     * @throws StatsDClientException
+     *     if the client could not be started
+     * @see StatsDEventClientBuilder
+     */
+    NonBlockingStatsDEventClient(StatsDEventClientBuilder builder) throws StatsDClientException {
+        super(builder);
+        this.blockingQueue = new LinkedBlockingDeque<EventMessage>(builder.queueSize);
+        startSender();
+    }
+
+    private void startSender() {
         executor.execute(new Runnable() {
 			
 			@Override
@@ -0,0 +1,178 @@
+package com.github.arnabk.statsd;
+
+import java.util.concurrent.TimeUnit;
+
+import com.timgroup.statsd.AddressResolver;
+import com.timgroup.statsd.LazyTransport;
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.TagCache;
+import com.timgroup.statsd.Transport;
+import com.timgroup.statsd.UnixSocketTransport;
+
+/**
+ * Configures and creates a {@link BlockingStatsDEventClient} or a
+ * {@link NonBlockingStatsDEventClient}.
+ *
+ * <p>A client built without touching the tuning options behaves like one created
+ * through the constructors of either class.</p>
+ */
+public final class StatsDEventClientBuilder {
+
+    final TransportSettings transportSettings = new TransportSettings();
+    String[] constantTags;
+    int tagCacheSize = TagCache.DEFAULT_CAPACITY;
+    StatsDClientErrorHandler errorHandler = BlockingStatsDClient.NO_OP_HANDLER;
+    int queueSize = Integer.MAX_VALUE;
+
+    public BlockingStatsDEventClient buildBlocking() throws StatsDClientException {
+        return new BlockingStatsDEventClient(this);
+    }
+
+    public NonBlockingStatsDEventClient buildNonBlocking() throws StatsDClientException {
+        return new NonBlockingStatsDEventClient(this);
+    }
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server, also reported with each event ; mandatory
+     */
+    public StatsDEventClientBuilder withHostname(final String hostname) {
+        transportSettings.hostname = hostname;
+        return this;
+    }
+
+    /**
+     * @param port
+     *     the port of the targeted StatsD server ; mandatory
+     */
+    public StatsDEventClientBuilder withPort(final int port) {
+        transportSettings.port = port;
+        return this;
+    }
+
+    /**
+     * Send to an agent on this host through its Unix domain stream socket instead of
+     * UDP, in which case the port is ignored. Needs Java 16 or later.
+     *
+     * @param socketPath
+     *     the file system path of the agent's socket ; Default: none, send over UDP
+     * @see UnixSocketTransport
+     */
+    public StatsDEventClientBuilder withUnixSocket(final String socketPath) {
+        transportSettings.socketPath = socketPath;
+        return this;
+    }
+
+    /**
+     * Send through the given transport, in which case the port and socket path are
+     * ignored. The transport is closed when the client is stopped.
+     *
+     * @param transport
+     *     the transport carrying events to the StatsD server ; Default: none, send over UDP
+     */
+    public StatsDEventClientBuilder withTransport(final Transport transport) {
+        transportSettings.transport = transport;
+        return this;
+    }
+
+    /**
+     * @param maxPayloadSize
+     *     the largest payload to send, in bytes ; Default: 1432 for UDP to a remote host,
+     *     8192 for UDP over loopback or a Unix socket
+     */
+    public StatsDEventClientBuilder withMaxPayloadSize(final int maxPayloadSize) {
+        if (maxPayloadSize < 1) {
+            throw new IllegalArgumentException("max payload size must be positive");
+        }
+        transportSettings.maxPayloadSize = maxPayloadSize;
+        return this;
+    }
+
+    /**
+     * Build the client without resolving the host name or opening a socket, leaving
+     * both to the first event sent. Failing to open, which includes failing to
+     * resolve the host name, is reported to the error handler and retried at most
+     * once a second; events sent in between are lost.
+     *
+     * @param enabled
+     *     whether to open the transport on first use ; Default: false
+     * @see LazyTransport
+     */
+    public StatsDEventClientBuilder withLazyStart(final boolean enabled) {
+        transportSettings.lazyStart = enabled;
+        return this;
+    }
+
+    /**
+     * @param addressResolver
+     *     turns the host name into the address sent to ; Default: {@link AddressResolver#SYSTEM}
+     * @see #withResolveInterval(long, TimeUnit)
+     */
+    public StatsDEventClientBuilder withAddressResolver(final AddressResolver addressResolver) {
+        if (addressResolver == null) {
+            throw new IllegalArgumentException("address resolver must be set");
+        }
+        transportSettings.addressResolver = addressResolver;
+        return this;
+    }
+
+    /**
+     * @param interval
+     *     how often to resolve the host name again in the background, zero to resolve
+     *     it only once ; Default: 0
+     */
+    public StatsDEventClientBuilder withResolveInterval(final long interval, final TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("resolve interval must not be negative");
+        }
+        transportSettings.resolveIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * @param constantTags
+     *     tags to be added to all content sent (each of them should be in the format key:value) ; Default: none
+     */
+    public StatsDEventClientBuilder withConstantTags(final String... constantTags) {
+        this.constantTags = constantTags;
+        return this;
+    }
+
+    /**
+     * @param tagCacheSize
+     *     the most rendered tag sets to keep, zero to always render ; Default: 1024
+     * @see TagCache
+     */
+    public StatsDEventClientBuilder withTagCacheSize(final int tagCacheSize) {
+        if (tagCacheSize < 0) {
+            throw new IllegalArgumentException("tag cache size must not be negative");
+        }
+        this.tagCacheSize = tagCacheSize;
+        return this;
+    }
+
+    /**
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage ; Default: ignore errors
+     */
+    public StatsDEventClientBuilder withErrorHandler(final StatsDClientErrorHandler errorHandler) {
+        this.errorHandler = errorHandler == null ? BlockingStatsDClient.NO_OP_HANDLER : errorHandler;
+        return this;
+    }
+
+    /**
+     * Bound the events a {@link NonBlockingStatsDEventClient} holds for its sender
+     * thread; events submitted while it is full are dropped.
+     *
+     * @param queueSize
+     *     the number of events which may wait for the sender thread ; Default: unbounded
+     */
+    public StatsDEventClientBuilder withQueueSize(final int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queue size must be positive");
+        }
+        this.queueSize = queueSize;
+        return this;
+    }
+}
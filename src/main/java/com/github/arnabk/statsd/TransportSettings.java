@@ -0,0 +1,41 @@
+package com.github.arnabk.statsd;
+
+import java.util.concurrent.TimeUnit;
+
+import com.timgroup.statsd.AddressResolver;
+import com.timgroup.statsd.StatsDClientException;
+import com.timgroup.statsd.Transport;
+import com.timgroup.statsd.TransportOpener;
+
+/**
+ * Where and how a client built by one of this package's builders sends, shared by
+ * the builders so they open transports alike.
+ */
+final class TransportSettings {
+
+    String hostname;
+    int port;
+    String socketPath;
+    Transport transport;
+    int maxPayloadSize;
+    boolean lazyStart;
+    AddressResolver addressResolver = AddressResolver.SYSTEM;
+    long resolveIntervalNanos;
+
+    /**
+     * @return the given transport, or a new one as configured
+     * @throws StatsDClientException
+     *     if the transport is opened now and could not be
+     */
+    Transport open() throws StatsDClientException {
+        if (transport != null) {
+            return transport;
+        }
+        try {
+            return new TransportOpener(hostname, port, socketPath, maxPayloadSize,
+                    addressResolver, resolveIntervalNanos, TimeUnit.NANOSECONDS).open(lazyStart);
+        } catch (Exception e) {
+            throw new StatsDClientException("Failed to start StatsD client", e);
+        }
+    }
+}
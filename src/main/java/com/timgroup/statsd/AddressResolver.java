@@ -0,0 +1,39 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Turns the configured host name of a StatsD server into the address datagrams are
+ * sent to.
+ *
+ * <p>A {@link UdpTransport} calls its resolver when it is created and, if told to,
+ * again at a fixed interval from a thread of its own, so implementations may block.
+ * {@link #SYSTEM} asks the JVM's resolver, which applies its own address cache.</p>
+ */
+public interface AddressResolver {
+
+    /** Resolves through {@link java.net.InetAddress}, failing for unknown hosts */
+    AddressResolver SYSTEM = new AddressResolver() {
+        @Override public InetSocketAddress resolve(String hostname, int port) throws IOException {
+            final InetSocketAddress address = new InetSocketAddress(hostname, port);
+            if (address.isUnresolved()) {
+                throw new UnknownHostException(hostname);
+            }
+            return address;
+        }
+    };
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server
+     * @param port
+     *     the port of the targeted StatsD server
+     * @return the resolved address of the server
+     * @throws IOException
+     *     if the host name could not be resolved
+     */
+    InetSocketAddress resolve(String hostname, int port) throws IOException;
+
+}
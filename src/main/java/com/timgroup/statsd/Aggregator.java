@@ -0,0 +1,369 @@
+package com.timgroup.statsd;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Folds repeated data points for the same aspect and tags into one value per flush
+ * interval: counters are summed, gauges keep their last value and sets keep their
+ * unique members. Histogram and timer samples are counted in a {@link QuantileSketch}
+ * and flushed as gauges for the configured percentiles, count, min, max and average.
+ *
+ * <p>Series live in a concurrent map keyed by kind, aspect and tags. Lookups go through
+ * a per-thread probe key, so recording into an existing series allocates nothing.
+ * Counters are striped across cache lines once threads collide on them, and writes
+ * to a gauge or set only touch shared state when the value actually changes.
+ * A series which sees no data for a whole interval is removed; since a producer may
+ * still hold it at that point, it is drained once more on the following flush.</p>
+ */
+final class Aggregator {
+
+    /**
+     * Receives the aggregated values on flush.
+     */
+    interface Sink {
+        void count(String aspect, long delta, String[] tags);
+        void gauge(String aspect, long value, String[] tags);
+        void gauge(String aspect, double value, String[] tags);
+        void set(String aspect, String value, String[] tags);
+    }
+
+    enum Kind { COUNT, LONG_GAUGE, DOUBLE_GAUGE, SET, HISTOGRAM, TIMER }
+
+    static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    static final int DEFAULT_MAX_BINS = 2048;
+    static final double[] DEFAULT_PERCENTILES = {0.5, 0.95, 0.99};
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double[] percentiles;
+    private final String[] percentileSuffixes;
+
+    private final ConcurrentMap<Key, Series> series = new ConcurrentHashMap<Key, Series>();
+    private final ThreadLocal<Key> probes = new ThreadLocal<Key>() {
+        @Override protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    /* Only touched by the flushing thread */
+    private List<Series> retired = new ArrayList<Series>();
+
+    Aggregator() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS, DEFAULT_PERCENTILES);
+    }
+
+    /**
+     * @param relativeAccuracy
+     *     the relative error allowed on histogram percentiles
+     * @param maxBins
+     *     the number of sketch buckets kept per histogram series and sign
+     * @param percentiles
+     *     the percentiles flushed for each histogram series, between 0 and 1
+     */
+    Aggregator(double relativeAccuracy, int maxBins, double[] percentiles) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.percentiles = percentiles.clone();
+        this.percentileSuffixes = new String[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            percentileSuffixes[i] = percentileSuffix(percentiles[i]);
+        }
+    }
+
+    void count(String aspect, long delta, String[] tags) {
+        ((CountSeries) lookup(Kind.COUNT, aspect, tags)).add(delta);
+    }
+
+    void gauge(String aspect, long value, String[] tags) {
+        ((GaugeSeries) lookup(Kind.LONG_GAUGE, aspect, tags)).set(value);
+    }
+
+    void gauge(String aspect, double value, String[] tags) {
+        ((GaugeSeries) lookup(Kind.DOUBLE_GAUGE, aspect, tags)).set(Double.doubleToRawLongBits(value));
+    }
+
+    void set(String aspect, String value, String[] tags) {
+        ((SetSeries) lookup(Kind.SET, aspect, tags)).add(value);
+    }
+
+    void histogram(String aspect, double value, String[] tags) {
+        ((SketchSeries) lookup(Kind.HISTOGRAM, aspect, tags)).add(value);
+    }
+
+    void time(String aspect, long timeInMs, String[] tags) {
+        ((SketchSeries) lookup(Kind.TIMER, aspect, tags)).add(timeInMs);
+    }
+
+    /**
+     * @return the number of series currently held
+     */
+    int size() {
+        return series.size();
+    }
+
+    /**
+     * Hand every value recorded since the previous flush to the sink. Must not be
+     * called concurrently with itself.
+     */
+    void flush(Sink sink) {
+        final List<Series> previouslyRetired = retired;
+        retired = new ArrayList<Series>();
+        for (Series s : previouslyRetired) {
+            s.flush(sink);
+        }
+        for (Iterator<Series> it = series.values().iterator(); it.hasNext(); ) {
+            final Series s = it.next();
+            if (s.flush(sink)) {
+                s.idle = false;
+            } else if (s.idle) {
+                it.remove();
+                retired.add(s);
+            } else {
+                s.idle = true;
+            }
+        }
+    }
+
+    private Series lookup(Kind kind, String aspect, String[] tags) {
+        final Key probe = probes.get().set(kind, aspect, tags == null ? NO_TAGS : tags);
+        Series s = series.get(probe);
+        if (s == null) {
+            final Key key = probe.copy();
+            s = newSeries(key);
+            final Series existing = series.putIfAbsent(key, s);
+            if (existing != null) {
+                s = existing;
+            }
+        }
+        return s;
+    }
+
+    private Series newSeries(Key key) {
+        switch (key.kind) {
+            case COUNT: return new CountSeries(key);
+            case SET: return new SetSeries(key);
+            case HISTOGRAM:
+            case TIMER: return new SketchSeries(key);
+            default: return new GaugeSeries(key);
+        }
+    }
+
+    /**
+     * @return the metric name suffix for a percentile, following the agent's naming:
+     *     "median" for 0.5, "95percentile" for 0.95, "99.9percentile" for 0.999
+     */
+    static String percentileSuffix(double percentile) {
+        if (percentile == 0.5) {
+            return "median";
+        }
+        final String digits = new BigDecimal(Double.toString(percentile * 100)).stripTrailingZeros().toPlainString();
+        return digits + "percentile";
+    }
+
+    static final class Key {
+        private Kind kind;
+        private String aspect;
+        private String[] tags;
+        private int hash;
+
+        Key set(Kind kind, String aspect, String[] tags) {
+            this.kind = kind;
+            this.aspect = aspect;
+            this.tags = tags;
+            this.hash = (kind.ordinal() * 31 + (aspect == null ? 0 : aspect.hashCode())) * 31 + Arrays.hashCode(tags);
+            return this;
+        }
+
+        Key copy() {
+            return new Key().set(kind, aspect, tags.length == 0 ? tags : tags.clone());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash
+                    && kind == other.kind
+                    && (aspect == null ? other.aspect == null : aspect.equals(other.aspect))
+                    && Arrays.equals(tags, other.tags);
+        }
+    }
+
+    private abstract static class Series {
+        final Key key;
+        /* Only touched by the flushing thread */
+        boolean idle;
+
+        Series(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * @return true if anything was recorded since the previous flush
+         */
+        abstract boolean flush(Sink sink);
+    }
+
+    private static final class CountSeries extends Series {
+        private final StripedCounter sum = new StripedCounter();
+        private volatile boolean touched;
+
+        CountSeries(Key key) {
+            super(key);
+        }
+
+        void add(long delta) {
+            sum.add(delta);
+            if (!touched) {
+                touched = true;
+            }
+        }
+
+        @Override
+        boolean flush(Sink sink) {
+            /* An add racing with the reset of touched still shows up in the sum */
+            final boolean wasTouched = touched;
+            if (wasTouched) {
+                touched = false;
+            }
+            final long value = sum.sumThenReset();
+            if (!wasTouched && value == 0) {
+                return false;
+            }
+            sink.count(key.aspect, value, key.tags);
+            return true;
+        }
+    }
+
+    private static final class GaugeSeries extends Series {
+        private volatile long bits;
+        private volatile boolean touched;
+        /* Only touched by the flushing thread */
+        private long flushedBits;
+
+        GaugeSeries(Key key) {
+            super(key);
+        }
+
+        void set(long bits) {
+            if (this.bits != bits) {
+                this.bits = bits;
+            }
+            if (!touched) {
+                touched = true;
+            }
+        }
+
+        @Override
+        boolean flush(Sink sink) {
+            /* A set racing with the reset of touched still shows up as a changed value */
+            final boolean wasTouched = touched;
+            if (wasTouched) {
+                touched = false;
+            }
+            final long bits = this.bits;
+            if (!wasTouched && bits == flushedBits) {
+                return false;
+            }
+            flushedBits = bits;
+            if (key.kind == Kind.DOUBLE_GAUGE) {
+                sink.gauge(key.aspect, Double.longBitsToDouble(bits), key.tags);
+            } else {
+                sink.gauge(key.aspect, bits, key.tags);
+            }
+            return true;
+        }
+    }
+
+    private static final class SetSeries extends Series {
+        private final ConcurrentMap<String, Boolean> values = new ConcurrentHashMap<String, Boolean>();
+
+        SetSeries(Key key) {
+            super(key);
+        }
+
+        void add(String value) {
+            if (!values.containsKey(value)) {
+                values.putIfAbsent(value, Boolean.TRUE);
+            }
+        }
+
+        @Override
+        boolean flush(Sink sink) {
+            boolean flushed = false;
+            for (Iterator<String> it = values.keySet().iterator(); it.hasNext(); ) {
+                final String value = it.next();
+                it.remove();
+                sink.set(key.aspect, value, key.tags);
+                flushed = true;
+            }
+            return flushed;
+        }
+    }
+
+    private final class SketchSeries extends Series {
+        private final QuantileSketch sketch = new QuantileSketch(relativeAccuracy, maxBins);
+        /* Built on first flush, so recording never concatenates names */
+        private String[] names;
+
+        SketchSeries(Key key) {
+            super(key);
+        }
+
+        synchronized void add(double value) {
+            sketch.add(value);
+        }
+
+        @Override
+        boolean flush(Sink sink) {
+            final long count;
+            final double[] values = new double[percentiles.length + 3];
+            synchronized (this) {
+                count = sketch.count();
+                if (count == 0) {
+                    return false;
+                }
+                for (int i = 0; i < percentiles.length; i++) {
+                    values[i] = sketch.quantile(percentiles[i]);
+                }
+                values[percentiles.length] = sketch.min();
+                values[percentiles.length + 1] = sketch.max();
+                values[percentiles.length + 2] = sketch.average();
+                sketch.clear();
+            }
+            if (names == null) {
+                names = new String[values.length + 1];
+                for (int i = 0; i < percentiles.length; i++) {
+                    names[i] = key.aspect + "." + percentileSuffixes[i];
+                }
+                names[percentiles.length] = key.aspect + ".min";
+                names[percentiles.length + 1] = key.aspect + ".max";
+                names[percentiles.length + 2] = key.aspect + ".avg";
+                names[values.length] = key.aspect + ".count";
+            }
+            for (int i = 0; i < values.length; i++) {
+                sink.gauge(names[i], values[i], key.tags);
+            }
+            sink.gauge(names[values.length], count, key.tags);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.timgroup.statsd;
+
+/**
+ * A counter with a fixed name and tags, obtained from {@link StatsDClient#counter}.
+ * The name and tags are encoded once when the handle is created, so recording only
+ * encodes the value. Handles are safe to share between threads and cheap to keep.
+ */
+public interface Counter {
+
+    /**
+     * Adjusts the counter by a given delta.
+     *
+     * @param delta
+     *     the amount to adjust the counter by
+     */
+    void count(long delta);
+
+    /**
+     * Increments the counter by one.
+     */
+    void increment();
+
+    /**
+     * Decrements the counter by one.
+     */
+    void decrement();
+}
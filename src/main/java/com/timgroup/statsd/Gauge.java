@@ -0,0 +1,25 @@
+package com.timgroup.statsd;
+
+/**
+ * A gauge with a fixed name and tags, obtained from {@link StatsDClient#gauge(String, String[])}.
+ * The name and tags are encoded once when the handle is created, so recording only
+ * encodes the value. Handles are safe to share between threads and cheap to keep.
+ */
+public interface Gauge {
+
+    /**
+     * Records the latest fixed value of the gauge.
+     *
+     * @param value
+     *     the new reading of the gauge
+     */
+    void record(long value);
+
+    /**
+     * Records the latest fixed value of the gauge.
+     *
+     * @param value
+     *     the new reading of the gauge
+     */
+    void record(double value);
+}
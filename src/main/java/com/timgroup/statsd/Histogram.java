@@ -0,0 +1,26 @@
+package com.timgroup.statsd;
+
+/**
+ * A histogram with a fixed name and tags, obtained from
+ * {@link StatsDClient#histogram(String, String[])}. The name and tags are encoded once
+ * when the handle is created, so recording only encodes the value. Handles are safe
+ * to share between threads and cheap to keep.
+ */
+public interface Histogram {
+
+    /**
+     * Records a value to be incorporated in the histogram.
+     *
+     * @param value
+     *     the value to be incorporated in the histogram
+     */
+    void record(long value);
+
+    /**
+     * Records a value to be incorporated in the histogram.
+     *
+     * @param value
+     *     the value to be incorporated in the histogram
+     */
+    void record(double value);
+}
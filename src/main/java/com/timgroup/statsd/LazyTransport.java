@@ -0,0 +1,145 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the transport it stands for on the first write rather than when created, so
+ * a client can be built without resolving host names or opening sockets.
+ *
+ * <p>The first write, and with it the cost of opening, falls to the sender thread of a
+ * non-blocking client, or to the first caller of a blocking one. Should opening fail,
+ * the write fails with it, and writes until the retry interval has passed fail
+ * without trying again. The opened transport must accept payloads of the size given
+ * here, which clients use from the start.</p>
+ */
+public final class LazyTransport implements Transport {
+
+    public static final long DEFAULT_RETRY_INTERVAL_MILLIS = 1000;
+
+    private final Callable<? extends Transport> opener;
+    private final int maxPayloadSize;
+    private final long retryIntervalNanos;
+
+    private volatile Transport transport;
+    /* Guarded by this */
+    private boolean closed;
+    private boolean failed;
+    private long lastAttempt;
+
+    /**
+     * @param opener
+     *     creates the transport to send through
+     * @param maxPayloadSize
+     *     the largest payload to send, which the opened transport must accept
+     */
+    public LazyTransport(Callable<? extends Transport> opener, int maxPayloadSize) {
+        this(opener, maxPayloadSize, DEFAULT_RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param opener
+     *     creates the transport to send through
+     * @param maxPayloadSize
+     *     the largest payload to send, which the opened transport must accept
+     * @param retryInterval
+     *     how long to wait after failing to open before trying again
+     */
+    public LazyTransport(Callable<? extends Transport> opener, int maxPayloadSize, long retryInterval, TimeUnit unit) {
+        if (opener == null) {
+            throw new IllegalArgumentException("opener must be set");
+        }
+        if (maxPayloadSize < 1) {
+            throw new IllegalArgumentException("max payload size must be positive");
+        }
+        if (retryInterval < 0) {
+            throw new IllegalArgumentException("retry interval must not be negative");
+        }
+        this.opener = opener;
+        this.maxPayloadSize = maxPayloadSize;
+        this.retryIntervalNanos = unit.toNanos(retryInterval);
+    }
+
+    @Override
+    public void write(ByteBuffer payload) throws IOException {
+        open().write(payload);
+    }
+
+    @Override
+    public void write(ByteBuffer[] payloads, int offset, int length) throws IOException {
+        open().write(payloads, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final Transport opened = transport;
+        if (opened != null) {
+            opened.flush();
+        }
+    }
+
+    @Override
+    public int maxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    /**
+     * @return the opened transport, null until a write has opened it
+     */
+    Transport opened() {
+        return transport;
+    }
+
+    /**
+     * @return how long to wait before the next attempt to open, zero if one may be made now
+     */
+    synchronized long retryDelayNanos() {
+        if (transport != null || !failed) {
+            return 0;
+        }
+        return Math.max(0, lastAttempt + retryIntervalNanos - System.nanoTime());
+    }
+
+    /**
+     * @return the opened transport, opening it unless an attempt failed within the retry interval
+     */
+    Transport open() throws IOException {
+        final Transport opened = transport;
+        if (opened != null) {
+            return opened;
+        }
+        synchronized (this) {
+            if (transport != null) {
+                return transport;
+            }
+            if (closed) {
+                throw new IOException("Transport closed before it was opened");
+            }
+            if (failed && System.nanoTime() - lastAttempt < retryIntervalNanos) {
+                throw new IOException("Transport not open yet, waiting to retry");
+            }
+            lastAttempt = System.nanoTime();
+            try {
+                transport = opener.call();
+                failed = false;
+                return transport;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            } catch (Exception e) {
+                failed = true;
+                throw new IOException("Failed to open transport", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.timgroup.statsd;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps payloads in memory instead of sending them, for tests and benchmarks which
+ * want to measure a client without the network.
+ */
+public final class MemoryTransport implements Transport {
+
+    private final int maxPayloadSize;
+    private final boolean retainPayloads;
+    private final List<byte[]> payloads = new ArrayList<byte[]>();
+    private long payloadCount;
+    private long byteCount;
+
+    /**
+     * Create a transport which keeps every payload written.
+     */
+    public MemoryTransport() {
+        this(1500, true);
+    }
+
+    /**
+     * @param maxPayloadSize
+     *     the payload size to report to clients
+     * @param retainPayloads
+     *     whether to keep payloads, or only count them
+     */
+    public MemoryTransport(int maxPayloadSize, boolean retainPayloads) {
+        if (maxPayloadSize < 1) {
+            throw new IllegalArgumentException("max payload size must be positive");
+        }
+        this.maxPayloadSize = maxPayloadSize;
+        this.retainPayloads = retainPayloads;
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer payload) {
+        final int size = payload.remaining();
+        if (retainPayloads) {
+            final byte[] copy = new byte[size];
+            payload.get(copy);
+            payloads.add(copy);
+        } else {
+            payload.position(payload.limit());
+        }
+        payloadCount++;
+        byteCount += size;
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer[] payloads, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(payloads[i]);
+        }
+    }
+
+    @Override
+    public void flush() {
+        /* Nothing is held back */
+    }
+
+    @Override
+    public int maxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    @Override
+    public void close() {
+        /* Nothing to release */
+    }
+
+    /**
+     * @return the number of payloads written so far
+     */
+    public synchronized long payloadCount() {
+        return payloadCount;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public synchronized long byteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return the payloads kept so far, in the order written
+     */
+    public synchronized List<String> payloads() {
+        final List<String> decoded = new ArrayList<String>(payloads.size());
+        for (byte[] payload : payloads) {
+            decoded.add(new String(payload, MessageEncoder.UTF_8));
+        }
+        return decoded;
+    }
+
+    /**
+     * @return every message in the payloads kept so far, in the order written
+     */
+    public synchronized List<String> messages() {
+        final List<String> messages = new ArrayList<String>();
+        for (String payload : payloads()) {
+            for (String message : payload.split("\n")) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Forget the payloads kept and counted so far.
+     */
+    public synchronized void clear() {
+        payloads.clear();
+        payloadCount = 0;
+        byteCount = 0;
+    }
+}
@@ -0,0 +1,329 @@
+package com.timgroup.statsd;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.commons.math3.util.Precision;
+
+/**
+ * A growable byte buffer which renders StatsD datagram lines without going through
+ * {@link String#format(String, Object...)}.
+ *
+ * <p>Strings are written as UTF-8, integral values as plain decimal and floating-point
+ * values with the six fixed decimals historically produced by <code>%f</code>. An
+ * encoder is reused by calling {@link #reset()}, so rendering a line allocates nothing
+ * once the backing array has grown to fit the longest line seen.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class MessageEncoder {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_CAPACITY = 128;
+
+    /* Fast double rendering is exact below this magnitude, see putDouble */
+    private static final double FAST_DOUBLE_LIMIT = 1e6;
+    private static final double MAX_EXACT_LONG = 9007199254740992.0; /* 2^53 */
+    private static final long DECIMAL_SCALE = 1000000L;
+
+    private byte[] buf;
+    private int len;
+
+    public MessageEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MessageEncoder(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Discard the current content, keeping the backing array for reuse.
+     */
+    public MessageEncoder reset() {
+        len = 0;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written since the last {@link #reset()}
+     */
+    public int length() {
+        return len;
+    }
+
+    /**
+     * Discard everything written after the first <code>length</code> bytes.
+     */
+    MessageEncoder truncate(int length) {
+        if (length < 0 || length > len) {
+            throw new IndexOutOfBoundsException(String.valueOf(length));
+        }
+        len = length;
+        return this;
+    }
+
+    /**
+     * Discard the first <code>count</code> bytes, moving the rest to the front.
+     */
+    MessageEncoder discardFront(int count) {
+        System.arraycopy(buf, count, buf, 0, len - count);
+        return truncate(len - count);
+    }
+
+    /**
+     * @return the number of newline-separated messages in the first <code>length</code> bytes
+     */
+    int messagesIn(int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (buf[i] == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the backing array; only the first {@link #length()} bytes are meaningful
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    /**
+     * @return a copy of the bytes written since the last {@link #reset()}
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    /**
+     * Copy the bytes written since the last {@link #reset()} into the given buffer.
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(buf, 0, len);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len, UTF_8);
+    }
+
+    public MessageEncoder put(byte b) {
+        ensureCapacity(1);
+        buf[len++] = b;
+        return this;
+    }
+
+    public MessageEncoder put(char asciiChar) {
+        return put((byte) asciiChar);
+    }
+
+    public MessageEncoder put(byte[] bytes) {
+        return put(bytes, 0, bytes.length);
+    }
+
+    public MessageEncoder put(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, len, length);
+        len += length;
+        return this;
+    }
+
+    /**
+     * Append the UTF-8 encoding of the given string. Unpaired surrogates are written
+     * as '?', matching {@link String#getBytes(Charset)}, and null as "null", matching
+     * {@link StringBuilder#append(String)}.
+     */
+    public MessageEncoder putString(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        final int n = s.length();
+        ensureCapacity(n);
+        int i = 0;
+        /* ASCII fast path, by far the common case for aspects and tags */
+        for (; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[len++] = (byte) c;
+        }
+        for (; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buf[len++] = (byte) (0xc0 | (c >> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    ensureCapacity(4);
+                    buf[len++] = (byte) (0xf0 | (cp >> 18));
+                    buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[len++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    put((byte) '?');
+                }
+            } else {
+                ensureCapacity(3);
+                buf[len++] = (byte) (0xe0 | (c >> 12));
+                buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[len++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of bytes {@link #putString(String)} writes for the given string
+     */
+    public static int utf8Length(String s) {
+        if (s == null) {
+            return 4;
+        }
+        final int n = s.length();
+        int length = n;
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 2;
+                i++;
+            } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Append the decimal representation of the given value, as {@link Long#toString(long)}.
+     */
+    public MessageEncoder putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return putString("-9223372036854775808");
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buf[len++] = '-';
+            value = -value;
+        }
+        final int start = len;
+        do {
+            buf[len++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        reverse(start, len - 1);
+        return this;
+    }
+
+    /**
+     * Append the given value rounded half-up to six decimals and always rendered with
+     * six decimals, i.e. exactly what <code>String.format("%f", Precision.round(value, 6))</code>
+     * produces in an English locale.
+     *
+     * <p>Values below one million are rendered arithmetically; integral values are
+     * rendered as longs. Anything else, and any value lying so close to a rounding
+     * boundary that double arithmetic could disagree with the decimal rounding of
+     * the legacy path, falls back to the formatter.</p>
+     */
+    public MessageEncoder putDouble(double value) {
+        final boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        final double abs = Math.abs(value);
+        if (abs < FAST_DOUBLE_LIMIT) {
+            /* scaled is within 3e-4 of the decimal value, so only near-ties are ambiguous */
+            final double scaled = abs * DECIMAL_SCALE;
+            long units = (long) scaled;
+            final double fraction = scaled - units;
+            if (Math.abs(fraction - 0.5) > 0.01) {
+                if (fraction > 0.5) {
+                    units++;
+                }
+                if (negative) {
+                    put((byte) '-');
+                }
+                putLong(units / DECIMAL_SCALE);
+                return putFraction(units % DECIMAL_SCALE);
+            }
+        } else if (abs < MAX_EXACT_LONG && abs == Math.floor(abs)) {
+            if (negative) {
+                put((byte) '-');
+            }
+            putLong((long) abs);
+            return putFraction(0);
+        }
+        return putString(String.format(Locale.US, "%f", Precision.round(value, 6)));
+    }
+
+    /**
+     * Append a tag suffix: the pre-rendered constant tags (which already start with
+     * <code>|#</code>), followed by the given tags in reverse order.
+     *
+     * @param constantTagsRendered
+     *     the rendered constant tags, or null if there are none
+     * @param tags
+     *     the tags for this data point, may be null
+     */
+    public MessageEncoder putTags(byte[] constantTagsRendered, String[] tags) {
+        final boolean haveTags = tags != null && tags.length > 0;
+        if (constantTagsRendered != null) {
+            put(constantTagsRendered);
+            if (!haveTags) {
+                return this;
+            }
+            put((byte) ',');
+        } else if (haveTags) {
+            put((byte) '|').put((byte) '#');
+        } else {
+            return this;
+        }
+        for (int n = tags.length - 1; n >= 0; n--) {
+            putString(tags[n]);
+            if (n > 0) {
+                put((byte) ',');
+            }
+        }
+        return this;
+    }
+
+    private MessageEncoder putFraction(long fraction) {
+        ensureCapacity(7);
+        buf[len++] = '.';
+        for (int i = len + 5; i >= len; i--) {
+            buf[i] = (byte) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        len += 6;
+        return this;
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            final byte tmp = buf[from];
+            buf[from++] = buf[to];
+            buf[to--] = tmp;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, len + extra));
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue of encoded messages shared by many producers and drained by a
+ * single consumer thread.
+ *
+ * <p>Slots are allocated up front and reused: a producer claims a slot by CAS on the
+ * tail sequence, encodes its message directly into the slot and publishes it; the
+ * consumer reads the slot in place and releases it. Each slot keeps its encoder, so
+ * in steady state nothing is allocated per message. The sequencing follows Dmitry
+ * Vyukov's bounded MPMC queue, which lets producers evict the oldest message when
+ * the {@link OverflowPolicy#DROP_OLDEST} policy is in force.</p>
+ */
+final class MessageRingBuffer {
+
+    private static final long MAX_BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    static final class Slot {
+        private static final AtomicLongFieldUpdater<Slot> SEQUENCE =
+                AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+        private volatile long sequence;
+        private MessageEncoder message;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * A slot outside any buffer, for a producer writing into its own encoder.
+         */
+        Slot(MessageEncoder message) {
+            this.sequence = -1;
+            this.message = message;
+        }
+
+        /**
+         * @return the encoder holding this slot's message
+         */
+        MessageEncoder message() {
+            return message;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity
+     *     the number of slots, rounded up to a power of two
+     * @param overflowPolicy
+     *     what to do when all slots are in use
+     * @param blockTimeoutNanos
+     *     how long {@link OverflowPolicy#BLOCK} waits for a free slot
+     */
+    MessageRingBuffer(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutNanos) {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of messages discarded because the buffer was full
+     */
+    long droppedMessages() {
+        return dropped.get();
+    }
+
+    /**
+     * Claim a slot for a new message, applying the overflow policy if the buffer is full.
+     * A claimed slot must always be handed back through {@link #publish(Slot)}.
+     *
+     * @return a slot with an empty encoder, or null if the message must be dropped
+     */
+    Slot claim() {
+        return claim(1);
+    }
+
+    /**
+     * Claim a slot for an item holding the given number of newline-separated messages,
+     * which are counted as dropped if the item is. Items evicted to make room are
+     * counted by their own messages.
+     *
+     * @return a slot with an empty encoder, or null if the item must be dropped
+     */
+    Slot claim(int messages) {
+        Slot slot = tryClaim();
+        if (slot != null) {
+            return slot;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                do {
+                    final Slot oldest = poll();
+                    if (oldest != null) {
+                        dropped.addAndGet(oldest.message.messagesIn(oldest.message.length()));
+                        release(oldest);
+                    }
+                } while ((slot = tryClaim()) == null);
+                return slot;
+            case BLOCK:
+                final long deadline = System.nanoTime() + blockTimeoutNanos;
+                long park = 1000;
+                while ((slot = tryClaim()) == null) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                        dropped.addAndGet(messages);
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, Math.min(park, remaining));
+                    park = Math.min(park << 1, MAX_BLOCK_PARK_NANOS);
+                }
+                return slot;
+            default:
+                dropped.addAndGet(messages);
+                return null;
+        }
+    }
+
+    /**
+     * Make a claimed slot visible to the consumer.
+     */
+    void publish(Slot slot) {
+        /* A full volatile write, so a consumer about to park cannot miss it */
+        slot.sequence = slot.sequence + 1;
+        final Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * @return the oldest published slot, or null if there is none; the slot must be
+     *     handed back through {@link #release(Slot)} once its message has been read
+     */
+    Slot poll() {
+        for (;;) {
+            final long pos = head.get();
+            final Slot slot = slots[(int) pos & mask];
+            final long dif = slot.sequence - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    return slot;
+                }
+            } else if (dif < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Wait up to the given time for a published slot. Only the consumer thread may call this.
+     */
+    Slot poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Slot slot = poll();
+        if (slot != null) {
+            return slot;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            waitingConsumer = Thread.currentThread();
+            while ((slot = poll()) == null) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return slot;
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * Wake the consumer if it waits in {@link #poll(long, TimeUnit)}, and stop it from
+     * waiting from now on. Producers may still publish.
+     */
+    void close() {
+        closed = true;
+        final Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Hand a polled slot back so producers can reuse it.
+     */
+    void release(Slot slot) {
+        Slot.SEQUENCE.lazySet(slot, slot.sequence + mask);
+    }
+
+    /**
+     * @return roughly how many claimed messages are waiting to be polled
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return true if no published message is waiting to be polled
+     */
+    boolean isEmpty() {
+        final long pos = head.get();
+        return slots[(int) pos & mask].sequence != pos + 1;
+    }
+
+    private Slot tryClaim() {
+        for (;;) {
+            final long pos = tail.get();
+            final Slot slot = slots[(int) pos & mask];
+            final long dif = slot.sequence - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    if (slot.message == null) {
+                        slot.message = new MessageEncoder();
+                    }
+                    slot.message.reset();
+                    return slot;
+                }
+            } else if (dif < 0) {
+                return null;
+            }
+        }
+    }
+}
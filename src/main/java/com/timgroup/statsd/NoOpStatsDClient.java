@@ -9,6 +9,7 @@ package com.timgroup.statsd;
  */
 public final class NoOpStatsDClient implements StatsDClient {
     @Override public void stop() { }
+    @Override public void close() { }
     @Override public void count(String aspect, long delta, String... tags) { }
     @Override public void count(String aspect, long delta, double sampleRate, String... tags) { }
     @Override public void incrementCounter(String aspect, String... tags) { }
@@ -39,4 +40,28 @@ public final class NoOpStatsDClient implements StatsDClient {
     @Override public void recordHistogramValue(String aspect, long value, double sampleRate, String... tags) { }
     @Override public void histogram(String aspect, long value, String... tags) { }
     @Override public void histogram(String aspect, long value, double sampleRate, String... tags) { }
+    @Override public void recordEvent(Event event, String... tags) { }
+    @Override public void recordServiceCheckRun(ServiceCheck sc) { }
+
+    private static final Counter NO_OP_COUNTER = new Counter() {
+        @Override public void count(long delta) { }
+        @Override public void increment() { }
+        @Override public void decrement() { }
+    };
+    private static final Gauge NO_OP_GAUGE = new Gauge() {
+        @Override public void record(long value) { }
+        @Override public void record(double value) { }
+    };
+    private static final Timer NO_OP_TIMER = new Timer() {
+        @Override public void record(long timeInMs) { }
+    };
+    private static final Histogram NO_OP_HISTOGRAM = new Histogram() {
+        @Override public void record(long value) { }
+        @Override public void record(double value) { }
+    };
+
+    @Override public Counter counter(String aspect, String... tags) { return NO_OP_COUNTER; }
+    @Override public Gauge gauge(String aspect, String... tags) { return NO_OP_GAUGE; }
+    @Override public Timer timer(String aspect, String... tags) { return NO_OP_TIMER; }
+    @Override public Histogram histogram(String aspect, String... tags) { return NO_OP_HISTOGRAM; }
 }
@@ -1,17 +1,17 @@
 package com.timgroup.statsd;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.util.concurrent.BlockingQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-
-import org.apache.commons.math3.util.Precision;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A simple StatsD client implementation facilitating metrics recording.
@@ -42,29 +42,75 @@ import org.apache.commons.math3.util.Precision;
  */
 public final class NonBlockingStatsDClient implements StatsDClient {
 
-    private static final int PACKET_SIZE_BYTES = 1500;
+    private static final byte[] COUNTER = "|c".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] GAUGE = "|g".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] TIMER = "|ms".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] HISTOGRAM = "|h".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] SET = "|s".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] EVENT = "_e{".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] SERVICE_CHECK = "_sc|".getBytes(MessageEncoder.UTF_8);
+    private static final byte[] TELEMETRY_PREFIX = "datadog.dogstatsd.client.".getBytes(MessageEncoder.UTF_8);
 
-    private static final StatsDClientErrorHandler NO_OP_HANDLER = new StatsDClientErrorHandler() {
-        @Override public void handle(Exception e) { /* No-op */ }
-    };
+    /* Marks data points sent without a sample rate */
+    private static final double NO_SAMPLE_RATE = -1;
+
+    private static final StatsDClientErrorHandler NO_OP_HANDLER = NonBlockingStatsDClientBuilder.NO_OP_HANDLER;
 
-    private final String prefix;
-    private final DatagramChannel clientChannel;
-    private final InetSocketAddress address;
+    /* How long past the shutdown deadline a sender may take writing its last batch */
+    static final long LAST_WRITE_GRACE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final byte[] prefix;
+    private final int maxPayloadSize;
+    private final int sendBatchSize;
+    private final long lingerNanos;
     private final StatsDClientErrorHandler handler;
-    private final String constantTagsRendered;
+    private final TagCache tagCache;
+    private final Sampler sampler;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
-        final ThreadFactory delegate = Executors.defaultThreadFactory();
-        @Override public Thread newThread(Runnable r) {
-            Thread result = delegate.newThread(r);
-            result.setName("StatsD-" + result.getName());
-            result.setDaemon(true);
-            return result;
-        }
-    });
+    private final ExecutorService executor;
+    private final QueueConsumer[] consumers;
+    private final long shutdownTimeoutNanos;
+    private ShutdownReport shutdownReport;
+
+    /* One queue per sender thread, producers always use the same one */
+    private final MessageRingBuffer[] queues;
 
-    private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+    /* Resolves the host name again for all sender threads, null unless enabled over UDP */
+    private final ScheduledExecutorService resolverThread;
+
+    /* The thread-local packets and their flusher are null unless packet mode is enabled */
+    private final ThreadLocal<PacketBuffer> packets;
+    private final Queue<PacketBuffer> packetBuffers;
+    private final ScheduledExecutorService packetFlusher;
+    private final long packetLingerNanos;
+
+    /* The aggregator and its flusher are null unless some client-side aggregation is enabled */
+    private final Aggregator aggregator;
+    private final ScheduledExecutorService aggregationFlusher;
+    private final boolean aggregateCounts;
+    private final boolean aggregateHistograms;
+
+    /* The reporter is null unless periodic telemetry is enabled */
+    private final ScheduledExecutorService telemetryReporter;
+    private final String[] telemetryTags;
+    /* Guards reading and replacing lastReported, which the reporter and stop() both do */
+    private final Object telemetryLock = new Object();
+    private volatile Telemetry lastReported = new Telemetry(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final Aggregator.Sink aggregateSink = new Aggregator.Sink() {
+        @Override public void count(String aspect, long delta, String[] tags) {
+            send(aspect, delta, COUNTER, NO_SAMPLE_RATE, tags);
+        }
+        @Override public void gauge(String aspect, long value, String[] tags) {
+            send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
+        }
+        @Override public void gauge(String aspect, double value, String[] tags) {
+            send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
+        }
+        @Override public void set(String aspect, String value, String[] tags) {
+            send(aspect, value, SET, tags);
+        }
+    };
 
     /**
      * Create a new StatsD client communicating with a StatsD instance on the
@@ -139,56 +185,440 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      *     if the client could not be started
      */
     public NonBlockingStatsDClient(String prefix, String hostname, int port, String[] constantTags, StatsDClientErrorHandler errorHandler) throws StatsDClientException {
+        this(new NonBlockingStatsDClientBuilder()
+                .withPrefix(prefix)
+                .withHostname(hostname)
+                .withPort(port)
+                .withConstantTags(constantTags)
+                .withErrorHandler(errorHandler));
+    }
+
+    /**
+     * Create a new StatsD client sending through the given transport, for instance a
+     * {@link UnixSocketTransport} to reach a local agent. All messages send via this
+     * client will have their keys prefixed with the specified string. All exceptions
+     * thrown during usage are passed to the specified handler and then consumed. The
+     * transport is closed when the client is stopped.
+     *
+     * @param prefix
+     *     the prefix to apply to keys sent via this client
+     * @param transport
+     *     the transport carrying messages to the StatsD server
+     * @param constantTags
+     *     tags to be added to all content sent
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage
+     */
+    public NonBlockingStatsDClient(String prefix, Transport transport, String[] constantTags, StatsDClientErrorHandler errorHandler) {
+        this(new NonBlockingStatsDClientBuilder()
+                .withPrefix(prefix)
+                .withTransport(transport)
+                .withConstantTags(constantTags)
+                .withErrorHandler(errorHandler));
+    }
+
+    /**
+     * Create a new StatsD client as configured by the given builder.
+     *
+     * @see NonBlockingStatsDClientBuilder
+     */
+    NonBlockingStatsDClient(NonBlockingStatsDClientBuilder builder) throws StatsDClientException {
+        String prefix = builder.prefix;
         if(prefix != null && prefix.length() > 0) {
-            this.prefix = String.format("%s.", prefix);
+            this.prefix = (prefix + ".").getBytes(MessageEncoder.UTF_8);
+        } else {
+            this.prefix = new byte[0];
+        }
+        this.handler = builder.errorHandler;
+
+        this.tagCache = new TagCache(builder.constantTags, builder.tagCacheSize);
+        this.sampler = builder.sampler;
+
+        final int senderThreads = builder.senderThreads;
+        final Transport[] transports = new Transport[senderThreads];
+        final boolean resolvesAgain = builder.transport == null && builder.transportFactory == null
+                && builder.socketPath == null && builder.resolveIntervalNanos > 0;
+        this.resolverThread = resolvesAgain ? UdpTransport.newResolverThread(builder.hostname) : null;
+        final TransportOpener opener = new TransportOpener(builder.hostname, builder.port, builder.socketPath,
+                builder.maxPayloadSize, builder.addressResolver, builder.resolveIntervalNanos, TimeUnit.NANOSECONDS,
+                resolverThread);
+        try {
+            for (int i = 0; i < senderThreads; i++) {
+                if (builder.transport != null) {
+                    transports[i] = builder.transport;
+                } else if (builder.transportFactory != null) {
+                    transports[i] = builder.transportFactory.call();
+                    if (transports[i] == null) {
+                        throw new IllegalStateException("transport factory returned null");
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (transports[j] == transports[i]) {
+                            /* Closed once, as the transport of the earlier sender */
+                            transports[i] = null;
+                            throw new IllegalArgumentException(
+                                    "a transport cannot be shared by several sender threads, the transport factory must create a new one on each call");
+                        }
+                    }
+                } else {
+                    transports[i] = opener.open(builder.lazyStart);
+                }
+            }
+        } catch (Exception e) {
+            for (Transport transport : transports) {
+                closeQuietly(transport);
+            }
+            if (resolverThread != null) {
+                resolverThread.shutdownNow();
+            }
+            if (e instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e;
+            }
+            throw new StatsDClientException("Failed to start StatsD client", e);
+        }
+        /* Never pack more than any transport can carry, even if configured to */
+        int payloadSize = builder.maxPayloadSize > 0 ? builder.maxPayloadSize : Integer.MAX_VALUE;
+        for (Transport transport : transports) {
+            payloadSize = Math.min(payloadSize, transport.maxPayloadSize());
+        }
+        this.maxPayloadSize = payloadSize;
+        this.sendBatchSize = builder.sendBatchSize > 0 ? builder.sendBatchSize : defaultSendBatchSize(builder);
+        this.lingerNanos = builder.lingerNanos;
+        this.shutdownTimeoutNanos = builder.shutdownTimeoutNanos;
+
+        /* The configured queue size is shared out between the sender threads */
+        final int shardSize = (builder.queueSize + senderThreads - 1) / senderThreads;
+        this.queues = new MessageRingBuffer[senderThreads];
+        this.consumers = new QueueConsumer[senderThreads];
+        this.executor = Executors.newFixedThreadPool(senderThreads, daemonThreadFactory());
+        for (int i = 0; i < senderThreads; i++) {
+            queues[i] = new MessageRingBuffer(shardSize, builder.overflowPolicy, builder.blockTimeoutNanos);
+            consumers[i] = new QueueConsumer(queues[i], transports[i]);
+            executor.submit(consumers[i]);
+        }
+
+        if (builder.threadLocalPackets) {
+            this.packetLingerNanos = builder.lingerNanos > 0
+                    ? builder.lingerNanos : TimeUnit.MILLISECONDS.toNanos(NonBlockingStatsDClientBuilder.DEFAULT_PACKET_LINGER_MILLIS);
+            this.packetBuffers = new ConcurrentLinkedQueue<PacketBuffer>();
+            this.packets = new ThreadLocal<PacketBuffer>() {
+                @Override protected PacketBuffer initialValue() {
+                    final PacketBuffer packet = new PacketBuffer();
+                    packetBuffers.add(packet);
+                    return packet;
+                }
+            };
+            this.packetFlusher = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+            this.packetFlusher.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    flushPackets(false);
+                }
+            }, packetLingerNanos, packetLingerNanos, TimeUnit.NANOSECONDS);
         } else {
-            this.prefix = "";
+            this.packetLingerNanos = 0;
+            this.packetBuffers = null;
+            this.packets = null;
+            this.packetFlusher = null;
         }
-        this.handler = errorHandler;
 
-        /* Empty list should be null for faster comparison */
-        if(constantTags != null && constantTags.length == 0) {
-            constantTags = null;
+        this.aggregateCounts = builder.aggregation;
+        this.aggregateHistograms = builder.histogramAggregation;
+        if (aggregateCounts || aggregateHistograms) {
+            this.aggregator = new Aggregator(builder.histogramRelativeAccuracy, builder.histogramMaxBins, builder.histogramPercentiles);
+            this.aggregationFlusher = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+            this.aggregationFlusher.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    flushAggregates();
+                }
+            }, builder.aggregationFlushIntervalMillis, builder.aggregationFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.aggregator = null;
+            this.aggregationFlusher = null;
         }
 
-        if(constantTags != null) {
-            this.constantTagsRendered = tagString(constantTags, null);
+        this.telemetryTags = new String[] {"client:java", "client_transport:" + transportName(builder)};
+        if (builder.telemetryIntervalNanos > 0) {
+            this.telemetryReporter = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+            this.telemetryReporter.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    reportTelemetry();
+                }
+            }, builder.telemetryIntervalNanos, builder.telemetryIntervalNanos, TimeUnit.NANOSECONDS);
         } else {
-            this.constantTagsRendered = null;
+            this.telemetryReporter = null;
         }
+    }
 
-        try {
-            this.clientChannel = DatagramChannel.open();
-            this.address = new InetSocketAddress(hostname, port);
-        } catch (Exception e) {
-            throw new StatsDClientException("Failed to start StatsD client", e);
+    private static String transportName(NonBlockingStatsDClientBuilder builder) {
+        if (builder.transport != null) {
+            if (builder.transport instanceof UdpTransport) {
+                return "udp";
+            }
+            return builder.transport instanceof UnixSocketTransport ? "uds" : "custom";
+        }
+        if (builder.transportFactory != null) {
+            return "custom";
         }
-        this.executor.submit(new QueueConsumer());
+        return builder.socketPath != null ? "uds" : "udp";
+    }
+
+    /* UdpTransport sends each payload of a batch with a system call of its own */
+    private static int defaultSendBatchSize(NonBlockingStatsDClientBuilder builder) {
+        return "udp".equals(transportName(builder)) ? 1 : NonBlockingStatsDClientBuilder.DEFAULT_SEND_BATCH_SIZE;
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        return new ThreadFactory() {
+            final ThreadFactory delegate = Executors.defaultThreadFactory();
+            @Override public Thread newThread(Runnable r) {
+                Thread result = delegate.newThread(r);
+                result.setName("StatsD-" + result.getName());
+                result.setDaemon(true);
+                return result;
+            }
+        };
     }
 
     /**
-     * Cleanly shut down this StatsD client. This method may throw an exception if
-     * the socket cannot be closed.
+     * Cleanly shut down this StatsD client: send what is still queued, within the
+     * shutdown timeout, then close the transport. Messages left over when the timeout
+     * runs out are reported to the error handler.
      */
     @Override
     public void stop() {
+        stop(shutdownTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Same as {@link #stop()}, for use in try-with-resources blocks.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Cleanly shut down this StatsD client, spending at most the given time sending
+     * what is still queued, then close the transport. Messages left over when the
+     * time runs out are reported to the error handler. Stopping a stopped client does
+     * nothing.
+     *
+     * <p>Each sender thread stops taking messages at the deadline, then writes the
+     * batch it holds, for which it gets up to a second more. A sender still writing
+     * after that is interrupted, and its batch counts as discarded along with
+     * whatever is left queued.</p>
+     *
+     * @return how many of the queued messages were sent and how many were discarded
+     */
+    public synchronized ShutdownReport stop(long timeout, TimeUnit unit) {
+        if (shutdownReport != null) {
+            return shutdownReport;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
         try {
+            if (telemetryReporter != null) {
+                telemetryReporter.shutdown();
+                telemetryReporter.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                reportTelemetry();
+            }
+            if (aggregationFlusher != null) {
+                aggregationFlusher.shutdown();
+                aggregationFlusher.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                flushAggregates();
+            }
+            if (packetFlusher != null) {
+                packetFlusher.shutdown();
+                packetFlusher.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                flushPackets(true);
+            }
+            for (QueueConsumer consumer : consumers) {
+                consumer.stop(deadline);
+            }
             executor.shutdown();
-            executor.awaitTermination(30, TimeUnit.SECONDS);
+            if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()) + LAST_WRITE_GRACE_NANOS, TimeUnit.NANOSECONDS)) {
+                handler.handle(new IOException("StatsD sender threads did not stop in time"));
+            }
         }
         catch (Exception e) {
             handler.handle(e);
         }
         finally {
-            if (clientChannel != null) {
+            /* Interrupt a sender still writing before closing its transport */
+            if (!executor.isTerminated()) {
+                executor.shutdownNow();
+            }
+            for (QueueConsumer consumer : consumers) {
                 try {
-                    clientChannel.close();
+                    consumer.transport.close();
                 }
                 catch (IOException e) {
                     handler.handle(e);
                 }
             }
+            if (resolverThread != null) {
+                resolverThread.shutdownNow();
+            }
+        }
+        long flushed = 0;
+        long discarded = 0;
+        for (QueueConsumer consumer : consumers) {
+            final ShutdownReport report = consumer.report();
+            flushed += report.getFlushedMessages();
+            discarded += report.getDiscardedMessages();
+        }
+        shutdownReport = new ShutdownReport(flushed, discarded);
+        if (shutdownReport.getDiscardedMessages() > 0) {
+            handler.handle(new IOException(
+                    String.format("Discarded %d messages while stopping the client", shutdownReport.getDiscardedMessages())));
         }
+        return shutdownReport;
+    }
+
+    /**
+     * @return the number of messages discarded because the queue was full
+     */
+    public long getDroppedMessages() {
+        long dropped = 0;
+        for (MessageRingBuffer queue : queues) {
+            dropped += queue.droppedMessages();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return what the client has sent, lost and still holds since it was created
+     */
+    public Telemetry getTelemetry() {
+        long metricsSent = 0;
+        long packetsSent = 0;
+        long bytesSent = 0;
+        long packetSendErrors = 0;
+        long metricsDropped = 0;
+        long flushLatencyNanos = 0;
+        long resolutionLatencyNanos = 0;
+        for (QueueConsumer consumer : consumers) {
+            Transport transport = consumer.transport;
+            if (transport instanceof LazyTransport) {
+                transport = ((LazyTransport) transport).opened();
+            }
+            if (transport instanceof UdpTransport) {
+                resolutionLatencyNanos = Math.max(resolutionLatencyNanos,
+                        ((UdpTransport) transport).getResolutionLatencyNanos());
+            }
+            metricsSent += consumer.metricsSent;
+            packetsSent += consumer.packetsSent;
+            bytesSent += consumer.bytesSent;
+            packetSendErrors += consumer.packetSendErrors;
+            metricsDropped += consumer.metricsDropped;
+            flushLatencyNanos = Math.max(flushLatencyNanos, consumer.flushLatencyNanos);
+        }
+        int queueDepth = 0;
+        for (MessageRingBuffer queue : queues) {
+            queueDepth += queue.size();
+        }
+        return new Telemetry(metricsSent, packetsSent, bytesSent, packetSendErrors, metricsDropped, getDroppedMessages(),
+                aggregator == null ? 0 : aggregator.size(), queueDepth, flushLatencyNanos, resolutionLatencyNanos);
+    }
+
+    /* Called by the reporter thread, and by stop() once the reporter has shut down or overrun its deadline */
+    private void reportTelemetry() {
+        synchronized (telemetryLock) {
+            try {
+                final Telemetry current = getTelemetry();
+                final Telemetry last = lastReported;
+                sendTelemetry("metrics", current.getMetricsSent() - last.getMetricsSent(), COUNTER);
+                sendTelemetry("packets_sent", current.getPacketsSent() - last.getPacketsSent(), COUNTER);
+                sendTelemetry("bytes_sent", current.getBytesSent() - last.getBytesSent(), COUNTER);
+                sendTelemetry("packets_dropped_writer", current.getPacketSendErrors() - last.getPacketSendErrors(), COUNTER);
+                sendTelemetry("metrics_dropped_writer", current.getMetricsDropped() - last.getMetricsDropped(), COUNTER);
+                sendTelemetry("metrics_dropped_queue", current.getQueueOverflowDrops() - last.getQueueOverflowDrops(), COUNTER);
+                sendTelemetry("aggregated_context", current.getAggregatedContexts(), GAUGE);
+                sendTelemetry("queue_depth", current.getQueueDepth(), GAUGE);
+                sendTelemetry("flush_latency_us", TimeUnit.NANOSECONDS.toMicros(current.getFlushLatencyNanos()), GAUGE);
+                sendTelemetry("resolution_latency_us", TimeUnit.NANOSECONDS.toMicros(current.getResolutionLatencyNanos()), GAUGE);
+                lastReported = current;
+            } catch (Exception e) {
+                handler.handle(e);
+            }
+        }
+    }
+
+    /* Telemetry goes out without the client's prefix, so it is found under the same names everywhere */
+    private void sendTelemetry(String name, long value, byte[] type) {
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            slot.message().put(TELEMETRY_PREFIX).putString(name).put(':').putLong(value).put(type)
+                    .put(tagCache.render(telemetryTags));
+        } finally {
+            publish(slot);
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * @return where the calling thread writes its next message, null to drop it; the
+     *     slot must always be handed back through {@link #publish(MessageRingBuffer.Slot)}
+     */
+    private MessageRingBuffer.Slot claim() {
+        if (packets != null) {
+            return packets.get().begin();
+        }
+        return queue().claim();
+    }
+
+    private void publish(MessageRingBuffer.Slot slot) {
+        if (packets != null) {
+            packets.get().end();
+        } else {
+            queue().publish(slot);
+        }
+    }
+
+    /**
+     * Queue the packets which have waited for the linger time, or all of them.
+     */
+    private void flushPackets(boolean all) {
+        final long now = System.nanoTime();
+        for (Iterator<PacketBuffer> it = packetBuffers.iterator(); it.hasNext();) {
+            final PacketBuffer packet = it.next();
+            final boolean dead = !packet.owner.isAlive();
+            if (all || dead) {
+                packet.lock.lock();
+            } else if (!packet.lock.tryLock()) {
+                /* The owner is writing, it will queue the packet itself once due */
+                continue;
+            }
+            try {
+                if (packet.message.length() > 0 && (all || dead || now - packet.firstWrite >= packetLingerNanos)) {
+                    packet.handOff(packet.message.length());
+                }
+            } finally {
+                packet.lock.unlock();
+            }
+            if (dead) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the queue of the calling thread's sender, so its messages stay in order
+     */
+    private MessageRingBuffer queue() {
+        if (queues.length == 1) {
+            return queues[0];
+        }
+        return queues[(int) (Thread.currentThread().getId() % queues.length)];
     }
 
     /**
@@ -218,13 +648,6 @@ public final class NonBlockingStatsDClient implements StatsDClient {
         return sb.toString();
     }
 
-    /**
-     * Generate a suffix conveying the given tag list to the client
-     */
-    String tagString(final String[] tags) {
-        return tagString(tags, constantTagsRendered);
-    }
-
     /**
      * Adjusts the specified counter by a given delta.
      *
@@ -239,14 +662,18 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void count(String aspect, long delta, String... tags) {
-        send(String.format("%s%s:%d|c%s", prefix, aspect, delta, tagString(tags)));
+        if (aggregateCounts) {
+            aggregator.count(aspect, delta, tags);
+            return;
+        }
+        send(aspect, delta, COUNTER, NO_SAMPLE_RATE, tags);
     }
     
     public void count(String aspect, long delta, double sampleRate, String...tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-    	send(String.format("%s%s:%d|c|%f%s", prefix, aspect, delta, sampleRate, tagString(tags)));
+    	send(aspect, delta, COUNTER, sampleRate, tags);
     }
 
     /**
@@ -327,7 +754,11 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(String aspect, double value, String... tags) {
-        send(String.format("%s%s:%f|g%s", prefix, aspect, Precision.round(value, 6), tagString(tags)));
+        if (aggregateCounts) {
+            aggregator.gauge(aspect, value, tags);
+            return;
+        }
+        send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
     }
     
 
@@ -335,7 +766,7 @@ public final class NonBlockingStatsDClient implements StatsDClient {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        send(String.format("%s%s:%f|g|%f%s", prefix, aspect, Precision.round(value, 6), sampleRate, tagString(tags)));
+        send(aspect, value, GAUGE, sampleRate, tags);
     }
 
     /**
@@ -365,14 +796,18 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordGaugeValue(String aspect, long value, String... tags) {
-        send(String.format("%s%s:%d|g%s", prefix, aspect, value, tagString(tags)));
+        if (aggregateCounts) {
+            aggregator.gauge(aspect, value, tags);
+            return;
+        }
+        send(aspect, value, GAUGE, NO_SAMPLE_RATE, tags);
     }
     
     public void recordGaugeValue(String aspect, long value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        send(String.format("%s%s:%d|g|%f%s", prefix, aspect, value, sampleRate, tagString(tags)));
+        send(aspect, value, GAUGE, sampleRate, tags);
     }
 
     /**
@@ -401,14 +836,18 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordExecutionTime(String aspect, long timeInMs, String... tags) {
-        send(String.format("%s%s:%d|ms%s", prefix, aspect, timeInMs, tagString(tags)));
+        if (aggregateHistograms) {
+            aggregator.time(aspect, timeInMs, tags);
+            return;
+        }
+        send(aspect, timeInMs, TIMER, NO_SAMPLE_RATE, tags);
     }
     
     public void recordExecutionTime(String aspect, long timeInMs, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        send(String.format("%s%s:%d|ms|%f%s", prefix, aspect, timeInMs, sampleRate, tagString(tags)));
+        send(aspect, timeInMs, TIMER, sampleRate, tags);
     }
 
     /**
@@ -437,14 +876,18 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordHistogramValue(String aspect, double value, String... tags) {
-        send(String.format("%s%s:%f|h%s", prefix, aspect, Precision.round(value, 6), tagString(tags)));
+        if (aggregateHistograms) {
+            aggregator.histogram(aspect, value, tags);
+            return;
+        }
+        send(aspect, value, HISTOGRAM, NO_SAMPLE_RATE, tags);
     }
     
     public void recordHistogramValue(String aspect, double value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        send(String.format("%s%s:%f|h|%f%s", prefix, aspect, Precision.round(value, 6), sampleRate, tagString(tags)));
+        send(aspect, value, HISTOGRAM, sampleRate, tags);
     }
 
     /**
@@ -473,14 +916,18 @@ public final class NonBlockingStatsDClient implements StatsDClient {
      */
     @Override
     public void recordHistogramValue(String aspect, long value, String... tags) {
-        send(String.format("%s%s:%d|h%s", prefix, aspect, value, tagString(tags)));
+        if (aggregateHistograms) {
+            aggregator.histogram(aspect, value, tags);
+            return;
+        }
+        send(aspect, value, HISTOGRAM, NO_SAMPLE_RATE, tags);
     }
     
     public void recordHistogramValue(String aspect, long value, double sampleRate, String... tags) {
     	if(isInvalidSample(sampleRate)) {
     		return;
     	}
-        send(String.format("%s%s:%d|h|%f%s", prefix, aspect, value, sampleRate, tagString(tags)));
+        send(aspect, value, HISTOGRAM, sampleRate, tags);
     }
 
     /**
@@ -495,59 +942,642 @@ public final class NonBlockingStatsDClient implements StatsDClient {
         recordHistogramValue(aspect, value, sampleRate, tags);
     }
 
-    private void send(String message) {
-        queue.offer(message);
+    /**
+     * Records a value for the specified named set, which counts the unique values seen.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param aspect
+     *     the name of the set
+     * @param value
+     *     the value to be added to the set
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    public void recordSetValue(String aspect, String value, String... tags) {
+        if (aggregateCounts) {
+            aggregator.set(aspect, String.valueOf(value), tags);
+            return;
+        }
+        send(aspect, value, SET, tags);
+    }
+
+    /**
+     * Records an event, queued and sent like the metrics of this client. The title is
+     * prefixed like metric names.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param event
+     *     the event to be recorded
+     * @param tags
+     *     array of tags to be added to the data
+     */
+    @Override
+    public void recordEvent(Event event, String... tags) {
+        final String title = escapeEventString(event.getTitle());
+        final String text = escapeEventString(event.getText());
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            final MessageEncoder encoder = slot.message();
+            encoder.put(EVENT).putLong(prefix.length + MessageEncoder.utf8Length(title))
+                    .put(',').putLong(MessageEncoder.utf8Length(text)).put('}').put(':')
+                    .put(prefix).putString(title).put('|').putString(text);
+            if (event.getMillisSinceEpoch() != -1) {
+                encoder.put('|').put('d').put(':').putLong(event.getMillisSinceEpoch() / 1000);
+            }
+            putField(encoder, 'h', event.getHostname());
+            putField(encoder, 'k', event.getAggregationKey());
+            putField(encoder, 'p', event.getPriority());
+            putField(encoder, 's', event.getSourceTypeName());
+            putField(encoder, 't', event.getAlertType());
+            tagCache.putTags(encoder, tags);
+        } finally {
+            publish(slot);
+        }
+    }
+
+    /**
+     * Records the run of a service check, queued and sent like the metrics of this
+     * client.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param sc
+     *     the service check run to be recorded
+     */
+    @Override
+    public void recordServiceCheckRun(ServiceCheck sc) {
+        if (!sc.hasStatus()) {
+            handler.handle(new IllegalArgumentException("Service check " + sc.getName() + " has no status"));
+            return;
+        }
+        final int status = sc.getStatus();
+        final String message = sc.getMessage() == null ? null : sc.getEscapedMessage();
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            final MessageEncoder encoder = slot.message();
+            encoder.put(SERVICE_CHECK).putString(sc.getName()).put('|').putLong(status);
+            if (sc.getTimestamp() > 0) {
+                encoder.put('|').put('d').put(':').putLong(sc.getTimestamp());
+            }
+            putField(encoder, 'h', sc.getHostname());
+            tagCache.putTags(encoder, sc.getTags());
+            putField(encoder, 'm', message);
+        } finally {
+            publish(slot);
+        }
+    }
+
+    private static void putField(MessageEncoder encoder, char key, String value) {
+        if (value != null) {
+            encoder.put('|').put(key).put(':').putString(value);
+        }
+    }
+
+    private static String escapeEventString(String s) {
+        return s.replace("\n", "\\n");
+    }
+
+    /**
+     * Returns a handle on the specified counter, with the name and tags encoded once.
+     *
+     * <p>Recording through the handle is non-blocking and is guaranteed not to throw
+     * an exception.</p>
+     */
+    @Override
+    public Counter counter(String aspect, String... tags) {
+        return new CounterHandle(aspect, tags);
+    }
+
+    /**
+     * Returns a handle on the specified gauge, with the name and tags encoded once.
+     *
+     * <p>Recording through the handle is non-blocking and is guaranteed not to throw
+     * an exception.</p>
+     */
+    @Override
+    public Gauge gauge(String aspect, String... tags) {
+        return new GaugeHandle(aspect, tags);
+    }
+
+    /**
+     * Returns a handle on the specified timed operation, with the name and tags
+     * encoded once.
+     *
+     * <p>Recording through the handle is non-blocking and is guaranteed not to throw
+     * an exception.</p>
+     */
+    @Override
+    public Timer timer(String aspect, String... tags) {
+        return new TimerHandle(aspect, tags);
+    }
+
+    /**
+     * Returns a handle on the specified histogram, with the name and tags encoded once.
+     *
+     * <p>Recording through the handle is non-blocking and is guaranteed not to throw
+     * an exception.</p>
+     */
+    @Override
+    public Histogram histogram(String aspect, String... tags) {
+        return new HistogramHandle(aspect, tags);
+    }
+
+    private void flushAggregates() {
+        try {
+            aggregator.flush(aggregateSink);
+        } catch (Exception e) {
+            handler.handle(e);
+        }
+    }
+
+    private void send(String aspect, String value, byte[] type, String[] tags) {
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            final MessageEncoder encoder = slot.message();
+            encoder.put(prefix).putString(aspect).put(':').putString(value);
+            encodeSuffix(encoder, type, NO_SAMPLE_RATE, tags);
+        } finally {
+            publish(slot);
+        }
+    }
+
+    private void send(String aspect, long value, byte[] type, double sampleRate, String[] tags) {
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            final MessageEncoder encoder = slot.message();
+            encoder.put(prefix).putString(aspect).put(':').putLong(value);
+            encodeSuffix(encoder, type, sampleRate, tags);
+        } finally {
+            publish(slot);
+        }
+    }
+
+    private void send(String aspect, double value, byte[] type, double sampleRate, String[] tags) {
+        final MessageRingBuffer.Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        try {
+            final MessageEncoder encoder = slot.message();
+            encoder.put(prefix).putString(aspect).put(':').putDouble(value);
+            encodeSuffix(encoder, type, sampleRate, tags);
+        } finally {
+            publish(slot);
+        }
+    }
+
+    /**
+     * A named, tagged metric whose message is encoded up to the value and from the
+     * type on when the handle is created.
+     */
+    private abstract class Handle {
+        final String aspect;
+        final String[] tags;
+        private final byte[] head;
+        private final byte[] tail;
+
+        Handle(String aspect, String[] tags, byte[] type) {
+            this.aspect = aspect;
+            this.tags = tags == null ? null : tags.clone();
+            this.head = new MessageEncoder().put(prefix).putString(aspect).put(':').toByteArray();
+            this.tail = new MessageEncoder().put(type).put(tagCache.render(this.tags)).toByteArray();
+        }
+
+        final void send(long value) {
+            final MessageRingBuffer.Slot slot = claim();
+            if (slot == null) {
+                return;
+            }
+            try {
+                slot.message().put(head).putLong(value).put(tail);
+            } finally {
+                publish(slot);
+            }
+        }
+
+        final void send(double value) {
+            final MessageRingBuffer.Slot slot = claim();
+            if (slot == null) {
+                return;
+            }
+            try {
+                slot.message().put(head).putDouble(value).put(tail);
+            } finally {
+                publish(slot);
+            }
+        }
+    }
+
+    private final class CounterHandle extends Handle implements Counter {
+        CounterHandle(String aspect, String[] tags) {
+            super(aspect, tags, COUNTER);
+        }
+
+        @Override public void count(long delta) {
+            if (aggregateCounts) {
+                aggregator.count(aspect, delta, tags);
+                return;
+            }
+            send(delta);
+        }
+
+        @Override public void increment() {
+            count(1);
+        }
+
+        @Override public void decrement() {
+            count(-1);
+        }
+    }
+
+    private final class GaugeHandle extends Handle implements Gauge {
+        GaugeHandle(String aspect, String[] tags) {
+            super(aspect, tags, GAUGE);
+        }
+
+        @Override public void record(long value) {
+            if (aggregateCounts) {
+                aggregator.gauge(aspect, value, tags);
+                return;
+            }
+            send(value);
+        }
+
+        @Override public void record(double value) {
+            if (aggregateCounts) {
+                aggregator.gauge(aspect, value, tags);
+                return;
+            }
+            send(value);
+        }
+    }
+
+    private final class TimerHandle extends Handle implements Timer {
+        TimerHandle(String aspect, String[] tags) {
+            super(aspect, tags, TIMER);
+        }
+
+        @Override public void record(long timeInMs) {
+            if (aggregateHistograms) {
+                aggregator.time(aspect, timeInMs, tags);
+                return;
+            }
+            send(timeInMs);
+        }
+    }
+
+    private final class HistogramHandle extends Handle implements Histogram {
+        HistogramHandle(String aspect, String[] tags) {
+            super(aspect, tags, HISTOGRAM);
+        }
+
+        @Override public void record(long value) {
+            if (aggregateHistograms) {
+                aggregator.histogram(aspect, value, tags);
+                return;
+            }
+            send(value);
+        }
+
+        @Override public void record(double value) {
+            if (aggregateHistograms) {
+                aggregator.histogram(aspect, value, tags);
+                return;
+            }
+            send(value);
+        }
+    }
+
+    private void encodeSuffix(MessageEncoder encoder, byte[] type, double sampleRate, String[] tags) {
+        encoder.put(type);
+        if (sampleRate != NO_SAMPLE_RATE) {
+            encoder.put('|').putDouble(sampleRate);
+        }
+        tagCache.putTags(encoder, tags);
     }
     
     private boolean isInvalidSample(double sampleRate) {
-    	return sampleRate != 1 && Math.random() > sampleRate;
+    	return sampleRate != 1 && !sampler.sample(sampleRate);
+    }
+
+    /**
+     * A recording thread's packet in packet mode. Messages are appended to it, and it
+     * is queued as one item once the next message would not fit, or by the packet
+     * flusher once it has waited for the linger time. The lock is only contended when
+     * the flusher looks at the packet.
+     */
+    private final class PacketBuffer {
+        final Thread owner = Thread.currentThread();
+        final MessageRingBuffer queue = queue();
+        final ReentrantLock lock = new ReentrantLock();
+        final MessageEncoder message = new MessageEncoder(maxPayloadSize + 1);
+        final MessageRingBuffer.Slot slot = new MessageRingBuffer.Slot(message);
+        long firstWrite;
+        private int mark;
+
+        MessageRingBuffer.Slot begin() {
+            lock.lock();
+            mark = message.length();
+            if (mark > 0) {
+                message.put('\n');
+            }
+            return slot;
+        }
+
+        void end() {
+            try {
+                final int start = mark > 0 ? mark + 1 : 0;
+                if (message.length() == start) {
+                    message.truncate(mark);
+                    return;
+                }
+                if (mark == 0) {
+                    firstWrite = System.nanoTime();
+                } else if (message.length() > maxPayloadSize) {
+                    /* Queue what was there, keep the new message for the next packet */
+                    handOff(mark);
+                    message.discardFront(1);
+                    firstWrite = System.nanoTime();
+                }
+                if (message.length() >= maxPayloadSize || System.nanoTime() - firstWrite >= packetLingerNanos) {
+                    /* Full, or even oversized, which the sender reports */
+                    handOff(message.length());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Queue the first bytes of the packet as one item and drop them from the packet.
+         */
+        void handOff(int length) {
+            final MessageRingBuffer.Slot target = queue.claim(message.messagesIn(length));
+            if (target != null) {
+                try {
+                    target.message().put(message.array(), 0, length);
+                } finally {
+                    queue.publish(target);
+                }
+            }
+            message.discardFront(length);
+        }
     }
 
     private class QueueConsumer implements Runnable {
-        private final ByteBuffer sendBuffer = ByteBuffer.allocate(PACKET_SIZE_BYTES);
+        /*
+         * Filled one after the other, then handed to the transport in one write. Direct
+         * buffers, kept for the client's lifetime, are written to the socket as they
+         * are rather than copied into a temporary direct buffer first.
+         */
+        private final ByteBuffer[] sendBuffers = new ByteBuffer[sendBatchSize];
+        private int current;
+        private final MessageRingBuffer queue;
+        private final Transport transport;
+        private final LazyTransport lazyTransport;
+        private final CountDownLatch stopSignal = new CountDownLatch(1);
+
+        QueueConsumer(MessageRingBuffer queue, Transport transport) {
+            this.queue = queue;
+            this.transport = transport;
+            this.lazyTransport = transport instanceof LazyTransport ? (LazyTransport) transport : null;
+            for (int i = 0; i < sendBuffers.length; i++) {
+                sendBuffers[i] = ByteBuffer.allocateDirect(maxPayloadSize);
+            }
+        }
+
+        /* Only ever touched by the sender thread */
+        private int pending;
+        private long batchStart;
+        private volatile boolean stopping;
+        private volatile long drainDeadline;
+
+        /* Written by the sender thread while draining, published by finished */
+        private volatile boolean draining;
+        private volatile long flushed;
+        private volatile long discarded;
+        /* The messages of the batch being written */
+        private volatile int writing;
+        private volatile boolean finished;
+        private volatile boolean abandoned;
+
+        /* Written by the sender thread only, read by anyone asking for telemetry */
+        private volatile long metricsSent;
+        private volatile long packetsSent;
+        private volatile long bytesSent;
+        private volatile long packetSendErrors;
+        private volatile long metricsDropped;
+        private volatile long flushLatencyNanos;
 
         @Override public void run() {
-            while(!executor.isShutdown()) {
+            while(!stopping) {
                 try {
-                    String message = queue.poll(1, TimeUnit.SECONDS);
-                    if(null != message) {
-                        byte[] data = message.getBytes();
-                        if(sendBuffer.remaining() < (data.length + 1)) {
-                            blockingSend();
-                        }
-                        if(sendBuffer.position() > 0) {
-                            sendBuffer.put( (byte) '\n');
-                        }
-                        sendBuffer.put(data);
-                        if(null == queue.peek()) {
-                            blockingSend();
-                        }
+                    if (!openTransport()) {
+                        stopSignal.await(lazyTransport.retryDelayNanos(), TimeUnit.NANOSECONDS);
+                        continue;
+                    }
+                    /* Wait for more messages while the pending batch may still linger */
+                    long wait = TimeUnit.SECONDS.toNanos(1);
+                    if (pending > 0) {
+                        wait = batchStart + lingerNanos - System.nanoTime();
+                    }
+                    MessageRingBuffer.Slot slot = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if(null != slot) {
+                        take(slot);
+                    }
+                    if(pending > 0 && queue.isEmpty() && System.nanoTime() - batchStart >= lingerNanos) {
+                        blockingSend();
+                        transport.flush();
+                    }
+                } catch (Exception e) {
+                    handler.handle(e);
+                }
+            }
+            try {
+                drain();
+            } finally {
+                finished = true;
+            }
+        }
+
+        void stop(long deadline) {
+            drainDeadline = deadline;
+            stopping = true;
+            stopSignal.countDown();
+            queue.close();
+        }
+
+        /*
+         * A lazy transport is opened before anything is taken from the queue, so what
+         * cannot be sent yet stays queued, and is counted as discarded if it still is
+         * when the client stops.
+         */
+        private boolean openTransport() {
+            if (lazyTransport == null || lazyTransport.opened() != null) {
+                return true;
+            }
+            if (lazyTransport.retryDelayNanos() > 0) {
+                return false;
+            }
+            try {
+                lazyTransport.open();
+                return true;
+            } catch (IOException e) {
+                handler.handle(e);
+                return false;
+            }
+        }
+
+        /*
+         * What became of the messages left when the client stopped. A sender which has
+         * not finished draining is given up on: the batch it is writing and whatever is
+         * still queued count as discarded.
+         */
+        ShutdownReport report() {
+            if (finished) {
+                return new ShutdownReport(flushed, discarded);
+            }
+            abandoned = true;
+            final boolean drained = draining;
+            long lost = writing;
+            MessageRingBuffer.Slot slot;
+            while((slot = queue.poll()) != null) {
+                lost += messagesIn(slot.message());
+                queue.release(slot);
+            }
+            return drained ? new ShutdownReport(flushed, discarded + lost) : new ShutdownReport(0, lost);
+        }
+
+        /*
+         * Send what is queued and buffered when the client stops, counting it from here
+         * on, and discard what is still queued once the deadline has passed.
+         */
+        private void drain() {
+            flushed = 0;
+            discarded = 0;
+            draining = true;
+            if (openTransport()) {
+                try {
+                    MessageRingBuffer.Slot slot;
+                    while(System.nanoTime() - drainDeadline < 0 && (slot = queue.poll()) != null) {
+                        take(slot);
                     }
+                    blockingSend();
+                    transport.flush();
                 } catch (Exception e) {
                     handler.handle(e);
                 }
             }
+            discarded += pending;
+            pending = 0;
+            MessageRingBuffer.Slot slot;
+            while(!abandoned && (slot = queue.poll()) != null) {
+                discarded += messagesIn(slot.message());
+                queue.release(slot);
+            }
+        }
+
+        private void take(MessageRingBuffer.Slot slot) {
+            try {
+                MessageEncoder message = slot.message();
+                if(message.length() > maxPayloadSize) {
+                    /* Lost whenever it is taken, so not counted among the messages discarded on stop */
+                    metricsDropped += messagesIn(message);
+                    handler.handle(
+                            new IOException(
+                                String.format(
+                                    "Dropped a message of %d bytes, more than the maximum payload size of %d bytes",
+                                    message.length(),
+                                    maxPayloadSize)));
+                } else if(message.length() > 0) {
+                    ByteBuffer sendBuffer = sendBuffers[current];
+                    if(sendBuffer.remaining() < (message.length() + 1)) {
+                        sendBuffer = nextBuffer();
+                    }
+                    if(sendBuffer.position() > 0) {
+                        sendBuffer.put( (byte) '\n');
+                    }
+                    message.writeTo(sendBuffer);
+                    if (pending == 0) {
+                        batchStart = System.nanoTime();
+                    }
+                    pending += messagesIn(message);
+                }
+            } finally {
+                queue.release(slot);
+            }
+        }
+
+        /* A packet holds many messages; counting its newlines is only worth it in packet mode */
+        private int messagesIn(MessageEncoder message) {
+            return packets == null ? 1 : message.messagesIn(message.length());
+        }
+
+        private ByteBuffer nextBuffer() {
+            if (current + 1 == sendBuffers.length) {
+                blockingSend();
+            } else {
+                current++;
+            }
+            return sendBuffers[current];
         }
-        
-        
-
-        private void blockingSend() throws IOException {
-            int sizeOfBuffer = sendBuffer.position();
-            sendBuffer.flip();
-            int sentBytes = clientChannel.send(sendBuffer, address);
-            sendBuffer.limit(sendBuffer.capacity());
-            sendBuffer.rewind();
-
-            if (sizeOfBuffer != sentBytes) {
-                handler.handle(
-                        new IOException(
-                            String.format(
-                                "Could not send entirely stat %s to host %s:%d. Only sent %d bytes out of %d bytes",
-                                sendBuffer.toString(),
-                                address.getHostName(),
-                                address.getPort(),
-                                sentBytes,
-                                sizeOfBuffer)));
+
+        private void blockingSend() {
+            final int count = sendBuffers[current].position() > 0 ? current + 1 : current;
+            if (count == 0) {
+                return;
+            }
+            long bytes = 0;
+            for (int i = 0; i < count; i++) {
+                sendBuffers[i].flip();
+                bytes += sendBuffers[i].remaining();
+            }
+            final long start = System.nanoTime();
+            writing = pending;
+            try {
+                if (count == 1) {
+                    transport.write(sendBuffers[0]);
+                } else {
+                    transport.write(sendBuffers, 0, count);
+                }
+                flushed += pending;
+                metricsSent += pending;
+                packetsSent += count;
+                bytesSent += bytes;
+            } catch (Exception e) {
+                /* Unchecked failures too, such as an address that never resolved */
+                discarded += pending;
+                metricsDropped += pending;
+                packetSendErrors += count;
+                handler.handle(e);
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    sendBuffers[i].clear();
+                }
+                current = 0;
+                pending = 0;
+                writing = 0;
+                flushLatencyNanos = System.nanoTime() - start;
             }
         }
     }
@@ -0,0 +1,467 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures and creates a {@link NonBlockingStatsDClient}.
+ *
+ * <p>A client built without touching the tuning options behaves like one created
+ * through the {@link NonBlockingStatsDClient} constructors.</p>
+ */
+public final class NonBlockingStatsDClientBuilder {
+
+    static final StatsDClientErrorHandler NO_OP_HANDLER = new StatsDClientErrorHandler() {
+        @Override public void handle(Exception e) { /* No-op */ }
+    };
+
+    static final int DEFAULT_QUEUE_SIZE = 16384;
+    static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10;
+    static final long DEFAULT_AGGREGATION_FLUSH_INTERVAL_MILLIS = 2000;
+    static final int DEFAULT_SEND_BATCH_SIZE = 8;
+    static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    static final long DEFAULT_PACKET_LINGER_MILLIS = 10;
+
+    String prefix;
+    String hostname;
+    int port;
+    String socketPath;
+    AddressResolver addressResolver = AddressResolver.SYSTEM;
+    long resolveIntervalNanos;
+    boolean lazyStart;
+    Transport transport;
+    Callable<? extends Transport> transportFactory;
+    int maxPayloadSize;
+    /* Zero until set, picking a size suited to the transport */
+    int sendBatchSize;
+    long lingerNanos;
+    int senderThreads = 1;
+    boolean threadLocalPackets;
+    long telemetryIntervalNanos;
+    String[] constantTags;
+    int tagCacheSize = TagCache.DEFAULT_CAPACITY;
+    StatsDClientErrorHandler errorHandler = NO_OP_HANDLER;
+    int queueSize = DEFAULT_QUEUE_SIZE;
+    OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    Sampler sampler = Samplers.random();
+    long blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BLOCK_TIMEOUT_MILLIS);
+    long shutdownTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+    boolean aggregation;
+    boolean histogramAggregation;
+    long aggregationFlushIntervalMillis = DEFAULT_AGGREGATION_FLUSH_INTERVAL_MILLIS;
+    double histogramRelativeAccuracy = Aggregator.DEFAULT_RELATIVE_ACCURACY;
+    int histogramMaxBins = Aggregator.DEFAULT_MAX_BINS;
+    double[] histogramPercentiles = Aggregator.DEFAULT_PERCENTILES;
+
+    public NonBlockingStatsDClient build() throws StatsDClientException {
+        if (transport != null && senderThreads > 1) {
+            throw new IllegalArgumentException("a given transport cannot be shared by several sender threads, give a transport factory");
+        }
+        return new NonBlockingStatsDClient(this);
+    }
+
+    /**
+     * @param prefix
+     *     the prefix to apply to keys sent via the client ; Default: none
+     */
+    public NonBlockingStatsDClientBuilder withPrefix(final String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server ; mandatory
+     */
+    public NonBlockingStatsDClientBuilder withHostname(final String hostname) {
+        this.hostname = hostname;
+        return this;
+    }
+
+    /**
+     * @param port
+     *     the port of the targeted StatsD server ; mandatory
+     */
+    public NonBlockingStatsDClientBuilder withPort(final int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Send to an agent on this host through its Unix domain stream socket instead of
+     * UDP, in which case the host name and port are ignored. Needs Java 16 or later.
+     *
+     * @param socketPath
+     *     the file system path of the agent's socket ; Default: none, send over UDP
+     * @see UnixSocketTransport
+     */
+    public NonBlockingStatsDClientBuilder withUnixSocket(final String socketPath) {
+        this.socketPath = socketPath;
+        return this;
+    }
+
+    /**
+     * Send through the given transport, in which case the host name, port and socket
+     * path are ignored. The transport is closed when the client is stopped. It cannot
+     * be combined with several sender threads, which take a transport factory instead.
+     *
+     * @param transport
+     *     the transport carrying messages to the StatsD server ; Default: none, send over UDP
+     */
+    public NonBlockingStatsDClientBuilder withTransport(final Transport transport) {
+        this.transport = transport;
+        this.transportFactory = null;
+        return this;
+    }
+
+    /**
+     * Send through transports created by the given factory, one for each sender
+     * thread, in which case the host name, port and socket path are ignored. Each
+     * call must return a new transport; building fails if one is returned twice. The
+     * transports are closed when the client is stopped.
+     *
+     * @param transportFactory
+     *     creates the transport of each sender thread ; Default: none, send over UDP
+     */
+    public NonBlockingStatsDClientBuilder withTransportFactory(final Callable<? extends Transport> transportFactory) {
+        this.transportFactory = transportFactory;
+        this.transport = null;
+        return this;
+    }
+
+    /**
+     * @param addressResolver
+     *     turns the host name into the address sent to ; Default: {@link AddressResolver#SYSTEM}
+     * @see #withResolveInterval(long, TimeUnit)
+     */
+    public NonBlockingStatsDClientBuilder withAddressResolver(final AddressResolver addressResolver) {
+        if (addressResolver == null) {
+            throw new IllegalArgumentException("address resolver must be set");
+        }
+        this.addressResolver = addressResolver;
+        return this;
+    }
+
+    /**
+     * Resolve the host name again at this interval, in the background, and send to its
+     * new address once it changes, e.g. after the StatsD agent has moved. A failed
+     * resolution keeps the last address that resolved.
+     *
+     * @param interval
+     *     how often to resolve the host name, zero to resolve it only once ; Default: 0
+     */
+    public NonBlockingStatsDClientBuilder withResolveInterval(final long interval, final TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("resolve interval must not be negative");
+        }
+        this.resolveIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Build the client without resolving the host name or opening a socket. Each
+     * sender thread opens its own once it has started, and what is recorded meanwhile
+     * waits in the queue, up to the queue size. Failing to open, which includes
+     * failing to resolve the host name, is reported to the error handler and retried
+     * at most once a second, and the sender takes nothing from the queue until it has
+     * succeeded. Unless a maximum payload size is given, UDP payloads are kept small
+     * enough for a remote server, as whether the server is local is not known yet.
+     *
+     * @param enabled
+     *     whether to open the transport on the sender thread ; Default: false
+     * @see LazyTransport
+     */
+    public NonBlockingStatsDClientBuilder withLazyStart(final boolean enabled) {
+        this.lazyStart = enabled;
+        return this;
+    }
+
+    /**
+     * Pack newline separated messages into payloads of at most this many bytes. Larger
+     * payloads mean fewer system calls, but over UDP must fit the network's MTU to
+     * avoid fragmentation. A single message larger than this is dropped and reported
+     * to the error handler.
+     *
+     * @param maxPayloadSize
+     *     the largest payload to send, in bytes ; Default: 1432 for UDP to a remote host,
+     *     8192 for UDP over loopback or a Unix socket, or what a given transport reports
+     */
+    public NonBlockingStatsDClientBuilder withMaxPayloadSize(final int maxPayloadSize) {
+        if (maxPayloadSize < 1) {
+            throw new IllegalArgumentException("max payload size must be positive");
+        }
+        this.maxPayloadSize = maxPayloadSize;
+        return this;
+    }
+
+    /**
+     * Let the sender thread fill up to this many payloads before handing them to the
+     * transport in one write, which a Unix socket sends in a single system call. Over
+     * UDP each payload still takes a system call of its own, so batching buys nothing
+     * there and is off unless set. The sender never waits for a batch to fill:
+     * whatever is ready goes out as soon as the queue runs empty.
+     *
+     * @param sendBatchSize
+     *     the most payloads per transport write ; Default: 1 over UDP, otherwise 8
+     */
+    public NonBlockingStatsDClientBuilder withSendBatchSize(final int sendBatchSize) {
+        if (sendBatchSize < 1) {
+            throw new IllegalArgumentException("send batch size must be positive");
+        }
+        this.sendBatchSize = sendBatchSize;
+        return this;
+    }
+
+    /**
+     * Send from this many threads, each with its own queue and its own socket or
+     * transport from the transport factory. A thread recording metrics always feeds
+     * the same sender, so its messages keep their order. The queue size is shared out
+     * between the senders.
+     *
+     * @param senderThreads
+     *     the number of sender threads ; Default: 1
+     */
+    public NonBlockingStatsDClientBuilder withSenderThreads(final int senderThreads) {
+        if (senderThreads < 1) {
+            throw new IllegalArgumentException("sender threads must be positive");
+        }
+        this.senderThreads = senderThreads;
+        return this;
+    }
+
+    /**
+     * Have each thread recording metrics pack its messages into a packet of its own,
+     * queued for the sender as a single item once the next message would not fit or
+     * once it has waited for the linger time (10ms unless set). This takes one queue
+     * operation per packet rather than per message, at the cost of one packet buffer
+     * per recording thread. The queue size then counts packets, while dropped message
+     * counts, shutdown reports and telemetry still count messages.
+     *
+     * @param enabled
+     *     whether to pack messages on the recording threads ; Default: false
+     * @see #withLinger(long, TimeUnit)
+     */
+    public NonBlockingStatsDClientBuilder withThreadLocalPackets(final boolean enabled) {
+        this.threadLocalPackets = enabled;
+        return this;
+    }
+
+    /**
+     * Let the sender thread hold a partly filled batch for up to this long, waiting for
+     * more messages to pack, before handing it to the transport. Full batches go out
+     * at once. A few milliseconds of linger turn a steady trickle of metrics into far
+     * fewer, fuller packets.
+     *
+     * @param linger
+     *     how long a message may wait for others to share its packet ; Default: 0, send as soon as the queue runs empty
+     */
+    public NonBlockingStatsDClientBuilder withLinger(final long linger, final TimeUnit unit) {
+        if (linger < 0) {
+            throw new IllegalArgumentException("linger must not be negative");
+        }
+        this.lingerNanos = unit.toNanos(linger);
+        return this;
+    }
+
+    /**
+     * Have the client report on itself every interval, through its own queue and
+     * transport, as <code>datadog.dogstatsd.client.*</code> metrics tagged with
+     * <code>client:java</code> and the transport in use. Counts cover the interval
+     * since the previous report. The same figures are always available from
+     * {@link NonBlockingStatsDClient#getTelemetry()}.
+     *
+     * @param interval
+     *     how often to report, zero not to ; Default: 0
+     */
+    public NonBlockingStatsDClientBuilder withTelemetryInterval(final long interval, final TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("telemetry interval must not be negative");
+        }
+        this.telemetryIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Keep the rendered form of up to this many distinct tag sets, so repeated tag sets
+     * are copied into messages instead of rendered again. Tag sets whose hashes
+     * collide take turns in the cache.
+     *
+     * @param tagCacheSize
+     *     the most tag sets to keep, rounded up to a power of two, zero to always render ; Default: 1024
+     * @see TagCache
+     */
+    public NonBlockingStatsDClientBuilder withTagCacheSize(final int tagCacheSize) {
+        if (tagCacheSize < 0) {
+            throw new IllegalArgumentException("tag cache size must not be negative");
+        }
+        this.tagCacheSize = tagCacheSize;
+        return this;
+    }
+
+    /**
+     * @param constantTags
+     *     tags to be added to all content sent ; Default: none
+     */
+    public NonBlockingStatsDClientBuilder withConstantTags(final String... constantTags) {
+        this.constantTags = constantTags;
+        return this;
+    }
+
+    /**
+     * @param errorHandler
+     *     handler to use when an exception occurs during usage ; Default: ignore errors
+     */
+    public NonBlockingStatsDClientBuilder withErrorHandler(final StatsDClientErrorHandler errorHandler) {
+        this.errorHandler = errorHandler == null ? NO_OP_HANDLER : errorHandler;
+        return this;
+    }
+
+    /**
+     * @param queueSize
+     *     the number of messages which may wait for the sender thread, rounded up to a
+     *     power of two ; Default: 16384
+     */
+    public NonBlockingStatsDClientBuilder withQueueSize(final int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queue size must be positive");
+        }
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * @param sampler
+     *     decides which data points recorded with a sample rate are sent ; Default: {@link Samplers#random()}
+     */
+    public NonBlockingStatsDClientBuilder withSampler(final Sampler sampler) {
+        if (sampler == null) {
+            throw new IllegalArgumentException("sampler must be set");
+        }
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * @param overflowPolicy
+     *     what to do with new messages while the queue is full ; Default: {@link OverflowPolicy#DROP_NEWEST}
+     */
+    public NonBlockingStatsDClientBuilder withOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflow policy must be set");
+        }
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * @param timeout
+     *     how long {@link OverflowPolicy#BLOCK} waits for room in the queue ; Default: 10ms
+     */
+    public NonBlockingStatsDClientBuilder withBlockTimeout(final long timeout, final TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("block timeout must not be negative");
+        }
+        this.blockTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Bound the time {@link NonBlockingStatsDClient#stop()} spends sending what is still
+     * queued; whatever is left when it runs out is discarded and reported. A sender
+     * thread may take up to a second past the timeout writing the batch it holds
+     * when the time runs out.
+     *
+     * @param timeout
+     *     how long stopping the client may take ; Default: 5s
+     */
+    public NonBlockingStatsDClientBuilder withShutdownTimeout(final long timeout, final TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("shutdown timeout must not be negative");
+        }
+        this.shutdownTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Fold unsampled counters, gauges and sets with the same aspect and tags into one
+     * value per flush interval before sending: counters are summed, gauges keep their
+     * last value and sets their unique values.
+     *
+     * @param enabled
+     *     whether to aggregate on the client ; Default: false
+     */
+    public NonBlockingStatsDClientBuilder withAggregation(final boolean enabled) {
+        this.aggregation = enabled;
+        return this;
+    }
+
+    /**
+     * Count unsampled histogram values and execution times in a quantile sketch per
+     * aspect and tags instead of sending every sample. Each flush interval sends the
+     * configured percentiles, count, min, max and avg of every series as gauges named
+     * after the aspect, e.g. <code>aspect.95percentile</code>.
+     *
+     * @param enabled
+     *     whether to aggregate histograms and timers on the client ; Default: false
+     */
+    public NonBlockingStatsDClientBuilder withHistogramAggregation(final boolean enabled) {
+        this.histogramAggregation = enabled;
+        return this;
+    }
+
+    /**
+     * @param percentiles
+     *     the percentiles sent for aggregated histograms, each between 0 and 1 exclusive ;
+     *     Default: 0.5, 0.95, 0.99
+     */
+    public NonBlockingStatsDClientBuilder withHistogramPercentiles(final double... percentiles) {
+        for (double percentile : percentiles) {
+            if (!(percentile > 0 && percentile < 1)) {
+                throw new IllegalArgumentException("percentiles must be between 0 and 1 exclusive");
+            }
+        }
+        this.histogramPercentiles = percentiles.clone();
+        return this;
+    }
+
+    /**
+     * @param relativeAccuracy
+     *     the relative error allowed on aggregated histogram percentiles, between 0 and 1
+     *     exclusive ; Default: 0.01
+     */
+    public NonBlockingStatsDClientBuilder withHistogramRelativeAccuracy(final double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relative accuracy must be between 0 and 1 exclusive");
+        }
+        this.histogramRelativeAccuracy = relativeAccuracy;
+        return this;
+    }
+
+    /**
+     * @param maxBins
+     *     the number of sketch buckets kept per aggregated histogram series, bounding its
+     *     memory ; Default: 2048
+     */
+    public NonBlockingStatsDClientBuilder withHistogramMaxBins(final int maxBins) {
+        if (maxBins < 1) {
+            throw new IllegalArgumentException("max bins must be positive");
+        }
+        this.histogramMaxBins = maxBins;
+        return this;
+    }
+
+    /**
+     * @param interval
+     *     how often aggregated values are sent ; Default: 2s
+     * @see #withAggregation(boolean)
+     * @see #withHistogramAggregation(boolean)
+     */
+    public NonBlockingStatsDClientBuilder withAggregationFlushInterval(final long interval, final TimeUnit unit) {
+        final long millis = unit.toMillis(interval);
+        if (millis < 1) {
+            throw new IllegalArgumentException("aggregation flush interval must be at least 1ms");
+        }
+        this.aggregationFlushIntervalMillis = millis;
+        return this;
+    }
+}
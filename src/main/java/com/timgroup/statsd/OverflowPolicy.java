@@ -0,0 +1,16 @@
+package com.timgroup.statsd;
+
+/**
+ * What a {@link NonBlockingStatsDClient} does with a new message when its queue is full.
+ */
+public enum OverflowPolicy {
+
+    /** Discard the message being recorded; the caller never waits. */
+    DROP_NEWEST,
+
+    /** Discard the oldest queued message to make room; the caller never waits. */
+    DROP_OLDEST,
+
+    /** Wait up to the configured timeout for room, then discard the message being recorded. */
+    BLOCK
+}
@@ -0,0 +1,244 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch with relative-error guarantees, after DDSketch
+ * (Masson, Rim and Lee, VLDB 2019).
+ *
+ * <p>Values are counted in logarithmically sized buckets held in primitive arrays:
+ * bucket <i>i</i> covers <code>(gamma^(i-1), gamma^i]</code> with
+ * <code>gamma = (1 + alpha) / (1 - alpha)</code>, so any quantile is reported within a
+ * relative error of <code>alpha</code> of an actual sample. Negative values are
+ * bucketed by magnitude in a second store. Each store keeps at most a configured
+ * number of buckets; beyond that the buckets closest to zero are collapsed together,
+ * which bounds memory at the cost of accuracy for the smallest magnitudes.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+final class QuantileSketch {
+
+    /* Magnitudes below this are counted as zero */
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double gamma;
+    private final double logGamma;
+    private final Store positives;
+    private final Store negatives;
+
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param relativeAccuracy
+     *     the maximum relative error of reported quantiles, between 0 and 1 exclusive
+     * @param maxBins
+     *     the maximum number of buckets kept for each sign
+     */
+    QuantileSketch(double relativeAccuracy, int maxBins) {
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positives = new Store(maxBins);
+        this.negatives = new Store(maxBins);
+    }
+
+    void add(double value) {
+        if (value != value) {
+            return;
+        }
+        if (value > MIN_INDEXABLE) {
+            positives.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negatives.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Add every value counted by the other sketch, which must share this sketch's accuracy.
+     */
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        positives.merge(other.positives);
+        negatives.merge(other.negatives);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    void clear() {
+        positives.clear();
+        negatives.clear();
+        zeroCount = 0;
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    long count() {
+        return count;
+    }
+
+    double sum() {
+        return sum;
+    }
+
+    double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    double average() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @param quantile
+     *     the quantile to estimate, between 0 and 1 inclusive
+     * @return the estimated value at the quantile, or NaN if the sketch is empty
+     */
+    double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (quantile <= 0) {
+            return min;
+        }
+        if (quantile >= 1) {
+            return max;
+        }
+        final long rank = (long) (quantile * (count - 1));
+        final double estimate;
+        if (rank < negatives.total) {
+            /* Negative values are ordered from the largest magnitude down */
+            estimate = -value(negatives.indexAtRank(negatives.total - 1 - rank));
+        } else if (rank < negatives.total + zeroCount) {
+            estimate = 0;
+        } else {
+            estimate = value(positives.indexAtRank(rank - negatives.total - zeroCount));
+        }
+        /* Bucket midpoints may fall outside the observed range */
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Bucket counts in a dense array covering a contiguous range of indexes.
+     */
+    private static final class Store {
+        private final int maxBins;
+        private long[] bins = new long[0];
+        /* The index counted by bins[0] */
+        private int offset;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex = Integer.MIN_VALUE;
+        private long total;
+
+        Store(int maxBins) {
+            this.maxBins = maxBins;
+        }
+
+        void add(int index, long n) {
+            if (index < minIndex || index > maxIndex) {
+                extendRange(Math.min(index, minIndex), Math.max(index, maxIndex));
+                if (index < minIndex) {
+                    /* Collapsed into the lowest kept bucket */
+                    index = minIndex;
+                }
+            }
+            bins[index - offset] += n;
+            total += n;
+        }
+
+        void merge(Store other) {
+            for (int index = other.minIndex; index <= other.maxIndex; index++) {
+                final long n = other.bins[index - other.offset];
+                if (n != 0) {
+                    add(index, n);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(bins, 0);
+            minIndex = Integer.MAX_VALUE;
+            maxIndex = Integer.MIN_VALUE;
+            total = 0;
+        }
+
+        int indexAtRank(long rank) {
+            long seen = 0;
+            for (int index = minIndex; index <= maxIndex; index++) {
+                seen += bins[index - offset];
+                if (seen > rank) {
+                    return index;
+                }
+            }
+            return maxIndex;
+        }
+
+        private void extendRange(int newMin, int newMax) {
+            if (newMax - newMin + 1 > maxBins) {
+                newMin = newMax - maxBins + 1;
+            }
+            if (total == 0 || newMin > maxIndex) {
+                /* Empty, or everything currently held collapses into the new lowest bucket */
+                final long collapsed = total;
+                if (bins.length < newMax - newMin + 1) {
+                    bins = new long[Math.min(maxBins, Math.max(newMax - newMin + 1, 16))];
+                } else {
+                    Arrays.fill(bins, 0);
+                }
+                offset = newMin;
+                bins[0] = collapsed;
+            } else {
+                long collapsed = 0;
+                for (int index = minIndex; index < newMin; index++) {
+                    collapsed += bins[index - offset];
+                }
+                if (newMin < offset || newMax >= offset + bins.length) {
+                    final long[] grown = new long[Math.min(maxBins, Math.max(newMax - newMin + 1, bins.length * 2))];
+                    for (int index = Math.max(minIndex, newMin); index <= maxIndex; index++) {
+                        grown[index - newMin] = bins[index - offset];
+                    }
+                    bins = grown;
+                    offset = newMin;
+                } else {
+                    for (int index = minIndex; index < newMin; index++) {
+                        bins[index - offset] = 0;
+                    }
+                }
+                bins[newMin - offset] += collapsed;
+            }
+            minIndex = newMin;
+            maxIndex = newMax;
+        }
+    }
+}
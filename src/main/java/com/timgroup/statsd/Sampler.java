@@ -0,0 +1,20 @@
+package com.timgroup.statsd;
+
+/**
+ * Decides which data points submitted with a sample rate below one are sent.
+ *
+ * <p>Implementations are called from every thread recording sampled metrics and must
+ * be thread-safe. {@link Samplers} provides the usual ones.</p>
+ */
+public interface Sampler {
+
+    /**
+     * Decide whether to send one data point.
+     *
+     * @param sampleRate
+     *     the rate the data point was submitted with, between 0 and 1
+     * @return true to send the data point, with roughly the given probability
+     */
+    boolean sample(double sampleRate);
+
+}
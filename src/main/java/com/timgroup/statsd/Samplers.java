@@ -0,0 +1,122 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link Sampler}s shipped with the clients.
+ */
+public final class Samplers {
+
+    /* 2^-53, turns the top 53 bits of a long into a double in [0, 1) */
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    /* The multiplier the Datadog trace agent hashes trace ids with */
+    private static final long TRACE_ID_MULTIPLIER = 1111111111111111111L;
+
+    private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(8682522807148012L);
+
+    private static final Sampler RANDOM = new ThreadLocalSampler(new ThreadLocal<XorShift>() {
+        @Override protected XorShift initialValue() {
+            return new XorShift(SEED_UNIQUIFIER.addAndGet(0x9e3779b97f4a7c15L) ^ System.nanoTime());
+        }
+    });
+
+    private Samplers() {
+    }
+
+    /**
+     * A sampler drawing from a generator private to each thread, so sampled calls from
+     * many threads never contend. This is what the clients use unless configured
+     * otherwise.
+     */
+    public static Sampler random() {
+        return RANDOM;
+    }
+
+    /**
+     * Like {@link #random()}, but every thread starts from the given seed, so a
+     * thread recording the same sequence of sampled calls makes the same decisions
+     * each time. Meant for tests.
+     */
+    public static Sampler seeded(final long seed) {
+        return new ThreadLocalSampler(new ThreadLocal<XorShift>() {
+            @Override protected XorShift initialValue() {
+                return new XorShift(seed);
+            }
+        });
+    }
+
+    /**
+     * A sampler keeping a data point whenever the trace it was recorded in is kept at
+     * the same rate, so sampled metrics line up with sampled traces. The trace id is
+     * hashed the way the Datadog trace agent hashes it. Data points recorded outside a
+     * trace are sampled at random.
+     *
+     * @param traceIds
+     *     tells the id of the trace the calling thread is in
+     */
+    public static Sampler byTraceId(final TraceIdSource traceIds) {
+        if (traceIds == null) {
+            throw new IllegalArgumentException("trace id source must be set");
+        }
+        return new Sampler() {
+            @Override public boolean sample(double sampleRate) {
+                final long traceId = traceIds.currentTraceId();
+                if (traceId == 0) {
+                    return RANDOM.sample(sampleRate);
+                }
+                return toUnitInterval(traceId * TRACE_ID_MULTIPLIER) < sampleRate;
+            }
+        };
+    }
+
+    /**
+     * Tells the id of the trace the calling thread is in, typically read from the
+     * tracer's active span.
+     */
+    public interface TraceIdSource {
+
+        /**
+         * @return the current trace id, or 0 if the calling thread is not in a trace
+         */
+        long currentTraceId();
+
+    }
+
+    static double toUnitInterval(long bits) {
+        return (bits >>> 11) * DOUBLE_UNIT;
+    }
+
+    private static final class ThreadLocalSampler implements Sampler {
+        private final ThreadLocal<XorShift> generators;
+
+        ThreadLocalSampler(ThreadLocal<XorShift> generators) {
+            this.generators = generators;
+        }
+
+        @Override public boolean sample(double sampleRate) {
+            return toUnitInterval(generators.get().next()) < sampleRate;
+        }
+    }
+
+    /**
+     * xorshift64*, plenty for sampling and a few instructions per draw.
+     */
+    private static final class XorShift {
+        private long state;
+
+        XorShift(long seed) {
+            /* The state must never be zero */
+            this.state = seed == 0 ? 0x9e3779b97f4a7c15L : seed;
+        }
+
+        long next() {
+            long x = state;
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            state = x;
+            return x * 0x2545f4914f6cdd1dL;
+        }
+    }
+}
@@ -81,6 +81,14 @@ public class ServiceCheck {
         return status.val;
     }
 
+    /**
+     * @return false if the service check was built without a status, which it cannot
+     *     be sent without
+     */
+    public boolean hasStatus() {
+        return status != null;
+    }
+
     public String getMessage() {
         return message;
     }
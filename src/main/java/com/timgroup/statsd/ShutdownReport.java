@@ -0,0 +1,36 @@
+package com.timgroup.statsd;
+
+/**
+ * What became of the messages still queued when a {@link NonBlockingStatsDClient}
+ * was stopped.
+ */
+public final class ShutdownReport {
+
+    private final long flushedMessages;
+    private final long discardedMessages;
+
+    ShutdownReport(long flushedMessages, long discardedMessages) {
+        this.flushedMessages = flushedMessages;
+        this.discardedMessages = discardedMessages;
+    }
+
+    /**
+     * @return the number of messages sent while stopping
+     */
+    public long getFlushedMessages() {
+        return flushedMessages;
+    }
+
+    /**
+     * @return the number of messages discarded because the shutdown timeout ran out
+     *     or the transport failed while stopping
+     */
+    public long getDiscardedMessages() {
+        return discardedMessages;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("flushed %d messages, discarded %d", flushedMessages, discardedMessages);
+    }
+}
@@ -1,5 +1,7 @@
 package com.timgroup.statsd;
 
+import java.io.Closeable;
+
 /**
  * Describes a client connection to a StatsD server, which may be used to post metrics
  * in the form of counters, timers, and gauges.
@@ -15,7 +17,7 @@ package com.timgroup.statsd;
  * @author Tom Denley
  *
  */
-public interface StatsDClient {
+public interface StatsDClient extends Closeable {
 
     /**
      * Cleanly shut down this StatsD client. This method may throw an exception if
@@ -23,6 +25,12 @@ public interface StatsDClient {
      */
     void stop();
 
+    /**
+     * Same as {@link #stop()}, so clients can be used in try-with-resources blocks.
+     */
+    @Override
+    void close();
+
     /**
      * Adjusts the specified counter by a given delta.
      *
@@ -208,4 +216,85 @@ public interface StatsDClient {
     
     void histogram(String aspect, long value, double sampleRate, String... tags);
 
+    /**
+     * Records an event, sent alongside the metrics of this client.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param event
+     *     the event to be recorded
+     * @param tags
+     *     array of tags to be added to the data
+     * @see <a href="http://docs.datadoghq.com/guides/dogstatsd/#events">http://docs.datadoghq.com/guides/dogstatsd/#events</a>
+     */
+    void recordEvent(Event event, String... tags);
+
+    /**
+     * Records the run of a service check, sent alongside the metrics of this client.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * <p>This method is non-blocking and is guaranteed not to throw an exception.</p>
+     *
+     * @param sc
+     *     the service check run to be recorded
+     * @see <a href="http://docs.datadoghq.com/guides/dogstatsd/#service-checks">http://docs.datadoghq.com/guides/dogstatsd/#service-checks</a>
+     */
+    void recordServiceCheckRun(ServiceCheck sc);
+
+    /**
+     * Returns a handle on the specified counter. Recording through the handle gives
+     * the same result as {@link #count}, without encoding the name and tags each time.
+     *
+     * @param aspect
+     *     the name of the counter
+     * @param tags
+     *     array of tags to be added to the data
+     * @return a handle to keep and reuse
+     */
+    Counter counter(String aspect, String... tags);
+
+    /**
+     * Returns a handle on the specified gauge. Recording through the handle gives the
+     * same result as {@link #recordGaugeValue}, without encoding the name and tags
+     * each time.
+     *
+     * @param aspect
+     *     the name of the gauge
+     * @param tags
+     *     array of tags to be added to the data
+     * @return a handle to keep and reuse
+     */
+    Gauge gauge(String aspect, String... tags);
+
+    /**
+     * Returns a handle on the specified timed operation. Recording through the handle
+     * gives the same result as {@link #recordExecutionTime}, without encoding the name
+     * and tags each time.
+     *
+     * @param aspect
+     *     the name of the timed operation
+     * @param tags
+     *     array of tags to be added to the data
+     * @return a handle to keep and reuse
+     */
+    Timer timer(String aspect, String... tags);
+
+    /**
+     * Returns a handle on the specified histogram. Recording through the handle gives
+     * the same result as {@link #recordHistogramValue}, without encoding the name and
+     * tags each time.
+     *
+     * <p>This method is a DataDog extension, and may not work with other servers.</p>
+     *
+     * @param aspect
+     *     the name of the histogram
+     * @param tags
+     *     array of tags to be added to the data
+     * @return a handle to keep and reuse
+     */
+    Histogram histogram(String aspect, String... tags);
+
 }
@@ -0,0 +1,75 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A sum which many threads can add to without contending on one cache line, in the
+ * spirit of <code>java.util.concurrent.atomic.LongAdder</code>.
+ *
+ * <p>Updates go to a single base value until two threads collide on it; from then on
+ * every thread adds to one of several stripes, each on its own cache line, chosen from
+ * its thread id. Reading the total merges the base and all stripes.</p>
+ */
+final class StripedCounter {
+
+    private static final int STRIPES = stripeCount();
+    /* Eight longs per stripe keep neighbouring stripes on separate 64 byte cache lines */
+    private static final int PADDING = 8;
+
+    private static final AtomicReferenceFieldUpdater<StripedCounter, AtomicLongArray> CELLS =
+            AtomicReferenceFieldUpdater.newUpdater(StripedCounter.class, AtomicLongArray.class, "cells");
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray cells;
+
+    void add(long delta) {
+        AtomicLongArray stripes = cells;
+        if (stripes == null) {
+            final long current = base.get();
+            if (base.compareAndSet(current, current + delta)) {
+                return;
+            }
+            stripes = inflate();
+        }
+        stripes.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    /**
+     * @return the sum of all additions since the previous call; additions racing with
+     *     this call are counted either now or next time, never twice or not at all
+     */
+    long sumThenReset() {
+        long sum = base.getAndSet(0);
+        final AtomicLongArray stripes = cells;
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += stripes.getAndSet(i * PADDING, 0);
+            }
+        }
+        return sum;
+    }
+
+    private AtomicLongArray inflate() {
+        CELLS.compareAndSet(this, null, new AtomicLongArray(STRIPES * PADDING));
+        return cells;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        id ^= id >>> 16;
+        id *= 0x85ebca6bL;
+        id ^= id >>> 13;
+        return (int) id & (STRIPES - 1);
+    }
+
+    private static int stripeCount() {
+        final int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        int stripes = 2;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
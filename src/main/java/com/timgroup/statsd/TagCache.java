@@ -0,0 +1,162 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of rendered tag suffixes: the <code>|#</code> marker, a client's
+ * constant tags and the tags of one data point, in the order the clients have always
+ * sent them.
+ *
+ * <p>Tag sets are looked up by content in a fixed number of slots, so the fresh
+ * arrays built for varargs calls hit as well as <code>static final</code> ones. A
+ * lookup takes no lock and a hit allocates nothing. A miss encodes the tags directly
+ * and keeps a copy of the result in the tag set's slot, replacing whatever was there.
+ * Cached arrays are copied, so changing an array after passing it never yields a
+ * stale suffix.</p>
+ *
+ * <p>Instances are thread-safe. The returned suffixes are shared and must not be
+ * modified.</p>
+ */
+public final class TagCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final byte[] NO_TAGS = new byte[0];
+
+    private final byte[] constantTagsRendered;
+    private final String constantTagsString;
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    /**
+     * @param constantTags
+     *     tags rendered ahead of every tag set, may be null
+     * @param capacity
+     *     the number of tag sets held, rounded up to a power of two; zero renders every time
+     */
+    public TagCache(String[] constantTags, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("tag cache capacity must not be negative");
+        }
+        if (constantTags != null && constantTags.length > 0) {
+            this.constantTagsRendered = new MessageEncoder().putTags(null, constantTags).toByteArray();
+            this.constantTagsString = new String(constantTagsRendered, MessageEncoder.UTF_8);
+        } else {
+            this.constantTagsRendered = null;
+            this.constantTagsString = "";
+        }
+        if (capacity > 0) {
+            final int size = Integer.highestOneBit(Math.min(capacity, 1 << 30) * 2 - 1);
+            this.slots = new AtomicReferenceArray<Entry>(size);
+            this.mask = size - 1;
+        } else {
+            this.slots = null;
+            this.mask = 0;
+        }
+    }
+
+    /**
+     * Append the rendered suffix for the given tags to the encoder, nothing if there
+     * are none.
+     */
+    public void putTags(MessageEncoder encoder, String[] tags) {
+        if (tags == null || tags.length == 0) {
+            if (constantTagsRendered != null) {
+                encoder.put(constantTagsRendered);
+            }
+            return;
+        }
+        if (slots == null) {
+            encoder.putTags(constantTagsRendered, tags);
+            return;
+        }
+        final int hash = Arrays.hashCode(tags);
+        final Entry entry = slots.get(slot(hash));
+        if (entry != null && entry.hash == hash && Arrays.equals(entry.tags, tags)) {
+            encoder.put(entry.bytes);
+            return;
+        }
+        final int start = encoder.length();
+        encoder.putTags(constantTagsRendered, tags);
+        slots.lazySet(slot(hash), new Entry(hash, tags.clone(), Arrays.copyOfRange(encoder.array(), start, encoder.length())));
+    }
+
+    /**
+     * @return the rendered suffix for the given tags, empty if there are none
+     */
+    public byte[] render(String[] tags) {
+        if (tags == null || tags.length == 0) {
+            return constantTagsRendered == null ? NO_TAGS : constantTagsRendered;
+        }
+        return lookup(tags).bytes;
+    }
+
+    /**
+     * @return the rendered suffix for the given tags as a string, empty if there are none
+     */
+    public String renderString(String[] tags) {
+        if (tags == null || tags.length == 0) {
+            return constantTagsString;
+        }
+        return lookup(tags).string();
+    }
+
+    /**
+     * @return the number of tag sets currently held
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; slots != null && i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private Entry lookup(String[] tags) {
+        final int hash = Arrays.hashCode(tags);
+        if (slots == null) {
+            return new Entry(hash, tags, render(constantTagsRendered, tags));
+        }
+        Entry entry = slots.get(slot(hash));
+        if (entry == null || entry.hash != hash || !Arrays.equals(entry.tags, tags)) {
+            final String[] copy = tags.clone();
+            entry = new Entry(hash, copy, render(constantTagsRendered, copy));
+            slots.lazySet(slot(hash), entry);
+        }
+        return entry;
+    }
+
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static byte[] render(byte[] constantTagsRendered, String[] tags) {
+        return new MessageEncoder().putTags(constantTagsRendered, tags).toByteArray();
+    }
+
+    private static final class Entry {
+        final int hash;
+        final String[] tags;
+        final byte[] bytes;
+        /* Only the blocking clients want strings, rendered on their first lookup */
+        private volatile String string;
+
+        Entry(int hash, String[] tags, byte[] bytes) {
+            this.hash = hash;
+            this.tags = tags;
+            this.bytes = bytes;
+        }
+
+        String string() {
+            String result = string;
+            if (result == null) {
+                result = new String(bytes, MessageEncoder.UTF_8);
+                string = result;
+            }
+            return result;
+        }
+    }
+}
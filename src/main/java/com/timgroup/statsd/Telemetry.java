@@ -0,0 +1,118 @@
+package com.timgroup.statsd;
+
+/**
+ * A snapshot of what a {@link NonBlockingStatsDClient} has done since it was created.
+ *
+ * <p>Metric counts count single messages, also when thread-local packets queue many
+ * of them as one item.</p>
+ */
+public final class Telemetry {
+
+    private final long metricsSent;
+    private final long packetsSent;
+    private final long bytesSent;
+    private final long packetSendErrors;
+    private final long metricsDropped;
+    private final long queueOverflowDrops;
+    private final int aggregatedContexts;
+    private final int queueDepth;
+    private final long flushLatencyNanos;
+    private final long resolutionLatencyNanos;
+
+    Telemetry(long metricsSent, long packetsSent, long bytesSent, long packetSendErrors,
+              long metricsDropped, long queueOverflowDrops, int aggregatedContexts, int queueDepth, long flushLatencyNanos,
+              long resolutionLatencyNanos) {
+        this.metricsSent = metricsSent;
+        this.packetsSent = packetsSent;
+        this.bytesSent = bytesSent;
+        this.packetSendErrors = packetSendErrors;
+        this.metricsDropped = metricsDropped;
+        this.queueOverflowDrops = queueOverflowDrops;
+        this.aggregatedContexts = aggregatedContexts;
+        this.queueDepth = queueDepth;
+        this.flushLatencyNanos = flushLatencyNanos;
+        this.resolutionLatencyNanos = resolutionLatencyNanos;
+    }
+
+    /**
+     * @return the number of messages handed to the transport
+     */
+    public long getMetricsSent() {
+        return metricsSent;
+    }
+
+    /**
+     * @return the number of payloads handed to the transport
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * @return the number of payload bytes handed to the transport
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of payloads lost because the transport failed to send them
+     */
+    public long getPacketSendErrors() {
+        return packetSendErrors;
+    }
+
+    /**
+     * @return the number of messages the sender lost, in payloads the transport failed
+     *     to send or because they were larger than the maximum payload size
+     */
+    public long getMetricsDropped() {
+        return metricsDropped;
+    }
+
+    /**
+     * @return the number of messages discarded because the queue was full
+     */
+    public long getQueueOverflowDrops() {
+        return queueOverflowDrops;
+    }
+
+    /**
+     * @return the number of series held by client-side aggregation, zero without it
+     */
+    public int getAggregatedContexts() {
+        return aggregatedContexts;
+    }
+
+    /**
+     * @return the number of messages waiting for the sender
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return how long the most recent batch took to hand to the transport
+     */
+    public long getFlushLatencyNanos() {
+        return flushLatencyNanos;
+    }
+
+    /**
+     * @return how long the most recent resolution of the server's host name took, zero
+     *     when not sending over UDP
+     */
+    public long getResolutionLatencyNanos() {
+        return resolutionLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "metrics sent %d, packets sent %d, bytes sent %d, packet send errors %d, metrics dropped %d, "
+                        + "queue overflow drops %d, "
+                        + "aggregated contexts %d, queue depth %d, flush latency %dns, resolution latency %dns",
+                metricsSent, packetsSent, bytesSent, packetSendErrors, metricsDropped, queueOverflowDrops,
+                aggregatedContexts, queueDepth, flushLatencyNanos, resolutionLatencyNanos);
+    }
+}
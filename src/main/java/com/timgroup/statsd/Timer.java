@@ -0,0 +1,17 @@
+package com.timgroup.statsd;
+
+/**
+ * A timer with a fixed name and tags, obtained from {@link StatsDClient#timer}.
+ * The name and tags are encoded once when the handle is created, so recording only
+ * encodes the value. Handles are safe to share between threads and cheap to keep.
+ */
+public interface Timer {
+
+    /**
+     * Records an execution time of the timed operation.
+     *
+     * @param timeInMs
+     *     the time in milliseconds
+     */
+    void record(long timeInMs);
+}
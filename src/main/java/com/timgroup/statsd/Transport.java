@@ -0,0 +1,75 @@
+package com.timgroup.statsd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries encoded payloads from a StatsD client to the server. Implement this to
+ * send through something other than the bundled transports, such as a relay, or to
+ * capture payloads in memory.
+ *
+ * <p>A payload holds one or more newline separated messages and is delivered as a
+ * unit, as one datagram or one framed record. Clients never write payloads longer
+ * than {@link #maxPayloadSize()}. Several payloads can be handed over in one call, so
+ * a transport can send them with a single system call where the platform allows, as
+ * {@link UnixSocketTransport} does; {@link UdpTransport} cannot. A transport may also
+ * hold written payloads back to send several at once, as long as {@link #flush()}
+ * sends everything held. Blocking clients write from the application's threads, so
+ * implementations must be safe for concurrent use.</p>
+ *
+ * @see UdpTransport
+ * @see UnixSocketTransport
+ * @see MemoryTransport
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Send the remaining bytes of the given buffer as one payload, or hold them until
+     * the next flush. On return the buffer's position has been advanced past whatever
+     * was taken, and the caller may reuse the buffer.
+     *
+     * @param payload
+     *     the encoded messages to send
+     * @throws IOException
+     *     if the payload could not be sent entirely
+     */
+    void write(ByteBuffer payload) throws IOException;
+
+    /**
+     * Send the remaining bytes of each of the given buffers as a payload of its own,
+     * in as few system calls as the transport can manage. On return each buffer's
+     * position has been advanced past whatever was taken.
+     *
+     * @param payloads
+     *     buffers of encoded messages
+     * @param offset
+     *     the index of the first buffer to send
+     * @param length
+     *     the number of buffers to send
+     * @throws IOException
+     *     if any of the payloads could not be sent entirely
+     */
+    void write(ByteBuffer[] payloads, int offset, int length) throws IOException;
+
+    /**
+     * Send any payloads held back by earlier writes. Clients call this whenever they
+     * run out of messages to send.
+     *
+     * @throws IOException
+     *     if the held payloads could not be sent entirely
+     */
+    void flush() throws IOException;
+
+    /**
+     * @return the largest payload, in bytes, this transport can deliver as a unit
+     */
+    int maxPayloadSize();
+
+    /**
+     * Send anything still held, then release the underlying socket. Writes after
+     * this fail.
+     */
+    @Override
+    void close() throws IOException;
+}
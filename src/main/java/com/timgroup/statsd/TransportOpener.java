@@ -0,0 +1,110 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the UDP or Unix domain socket transport a client is configured for, either
+ * right away or, through a {@link LazyTransport}, on its first write. All client
+ * builders open their transports through it, so they open them alike.
+ */
+public final class TransportOpener implements Callable<Transport> {
+
+    private final String hostname;
+    private final int port;
+    private final String socketPath;
+    private final int maxPayloadSize;
+    private final AddressResolver addressResolver;
+    private final long resolveIntervalNanos;
+    private final ScheduledExecutorService resolverThread;
+    /* Set for the opener behind a lazy transport, which retries until the host resolves */
+    private final boolean failUnresolved;
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server, unless a socket path is given
+     * @param port
+     *     the port of the targeted StatsD server, unless a socket path is given
+     * @param socketPath
+     *     the Unix domain socket of the targeted StatsD server, null to send over UDP
+     * @param maxPayloadSize
+     *     the largest payload to send, or 0 for the transport's default
+     * @param addressResolver
+     *     turns the host name into an address
+     * @param resolveInterval
+     *     how often to resolve the host name again, zero to resolve it only once
+     */
+    public TransportOpener(String hostname, int port, String socketPath, int maxPayloadSize,
+                           AddressResolver addressResolver, long resolveInterval, TimeUnit unit) {
+        this(hostname, port, socketPath, maxPayloadSize, addressResolver, resolveInterval, unit, null);
+    }
+
+    /**
+     * @param resolverThread
+     *     the thread resolving the host name again for every transport opened, or null
+     *     for each to start its own if needed
+     */
+    TransportOpener(String hostname, int port, String socketPath, int maxPayloadSize, AddressResolver addressResolver,
+                    long resolveInterval, TimeUnit unit, ScheduledExecutorService resolverThread) {
+        this(hostname, port, socketPath, maxPayloadSize, addressResolver, resolveInterval, unit, resolverThread, false);
+    }
+
+    private TransportOpener(String hostname, int port, String socketPath, int maxPayloadSize,
+                            AddressResolver addressResolver, long resolveInterval, TimeUnit unit,
+                            ScheduledExecutorService resolverThread, boolean failUnresolved) {
+        this.hostname = hostname;
+        this.port = port;
+        this.socketPath = socketPath;
+        this.maxPayloadSize = maxPayloadSize;
+        this.addressResolver = addressResolver;
+        this.resolveIntervalNanos = unit.toNanos(resolveInterval);
+        this.resolverThread = resolverThread;
+        this.failUnresolved = failUnresolved;
+    }
+
+    /**
+     * @return a new transport, opened now
+     * @throws IOException
+     *     if the socket could not be opened, or, behind a lazy transport, if the host
+     *     name could not be resolved
+     */
+    @Override
+    public Transport call() throws IOException {
+        if (socketPath != null) {
+            return new UnixSocketTransport(socketPath, maxPayloadSize);
+        }
+        final UdpTransport transport = new UdpTransport(hostname, port, maxPayloadSize, addressResolver,
+                resolveIntervalNanos, TimeUnit.NANOSECONDS, resolverThread);
+        if (failUnresolved && transport.getAddress().isUnresolved()) {
+            transport.close();
+            throw new UnknownHostException(hostname);
+        }
+        return transport;
+    }
+
+    /**
+     * @param lazily
+     *     whether to wait for the first write before opening the socket
+     * @return a new transport, opened now unless lazily; a lazy one only counts as
+     *     opened once the host name has resolved
+     * @throws IOException
+     *     if the socket was to be opened now and could not be
+     */
+    public Transport open(boolean lazily) throws IOException {
+        if (!lazily) {
+            return call();
+        }
+        /* Whether the server is on the loopback interface is not known before resolving its name */
+        int size = maxPayloadSize;
+        if (size == 0) {
+            size = socketPath != null ? UnixSocketTransport.DEFAULT_PAYLOAD_SIZE : UdpTransport.DEFAULT_REMOTE_PAYLOAD_SIZE;
+        }
+        return new LazyTransport(
+                new TransportOpener(hostname, port, socketPath, size, addressResolver,
+                        resolveIntervalNanos, TimeUnit.NANOSECONDS, resolverThread, true),
+                size);
+    }
+}
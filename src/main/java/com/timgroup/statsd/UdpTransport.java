@@ -0,0 +1,343 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends each payload as one UDP datagram.
+ *
+ * <p>Unless told otherwise, payloads are sized to avoid IP fragmentation: an Ethernet
+ * frame less the IPv6 and UDP headers for a remote server, or a larger size for a
+ * server on the loopback interface, which has a much larger MTU.</p>
+ *
+ * <p>The host name is resolved once unless a resolution interval is given, in which
+ * case a daemon thread resolves it again at that interval and the transport moves to
+ * a changed address before its next send. Senders never wait for the resolver. A
+ * failed resolution keeps the last address that resolved. Moving connects a new
+ * channel before publishing it, so concurrent senders keep using the old one
+ * meanwhile.</p>
+ */
+public final class UdpTransport implements Transport {
+
+    /** The payload size for a remote server: a 1500 byte frame less IP and UDP headers, with room for IP options */
+    public static final int DEFAULT_REMOTE_PAYLOAD_SIZE = 1432;
+
+    /** The payload size for a server on the loopback interface */
+    public static final int DEFAULT_LOOPBACK_PAYLOAD_SIZE = 8192;
+
+    /** The largest payload a UDP datagram over IPv4 can carry */
+    public static final int MAX_PAYLOAD_SIZE = 65507;
+
+    private final String hostname;
+    private final int port;
+    private final AddressResolver resolver;
+    private final int maxPayloadSize;
+    /* Null unless resolving again, and then only if the thread is not shared */
+    private final ScheduledExecutorService ownResolverThread;
+    private final ScheduledFuture<?> resolution;
+
+    /* Swapped by the resolver thread, picked up by the next send */
+    private volatile InetSocketAddress address;
+    /* Published together by connect(), the channel first */
+    private volatile DatagramChannel channel;
+    private volatile InetSocketAddress connectedAddress;
+    private volatile long resolutionLatencyNanos;
+    /* Guarded by this: the channel replaced last, closed once replaced again or on close */
+    private DatagramChannel retired;
+    private boolean closed;
+
+    /**
+     * Create a transport with a payload size suited to where the server is.
+     *
+     * @param hostname
+     *     the host name of the targeted StatsD server
+     * @param port
+     *     the port of the targeted StatsD server
+     * @throws IOException
+     *     if the socket could not be opened
+     */
+    public UdpTransport(String hostname, int port) throws IOException {
+        this(hostname, port, 0);
+    }
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server
+     * @param port
+     *     the port of the targeted StatsD server
+     * @param maxPayloadSize
+     *     the largest datagram to send, at most {@link #MAX_PAYLOAD_SIZE} bytes, or 0 to
+     *     pick one suited to where the server is
+     * @throws IOException
+     *     if the socket could not be opened
+     */
+    public UdpTransport(String hostname, int port, int maxPayloadSize) throws IOException {
+        this(hostname, port, maxPayloadSize, AddressResolver.SYSTEM, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param hostname
+     *     the host name of the targeted StatsD server
+     * @param port
+     *     the port of the targeted StatsD server
+     * @param maxPayloadSize
+     *     the largest datagram to send, at most {@link #MAX_PAYLOAD_SIZE} bytes, or 0 to
+     *     pick one suited to where the server is
+     * @param resolver
+     *     turns the host name into an address
+     * @param resolveInterval
+     *     how often to resolve the host name again, zero to resolve it only once
+     * @throws IOException
+     *     if the socket could not be opened
+     */
+    public UdpTransport(String hostname, int port, int maxPayloadSize,
+                        AddressResolver resolver, long resolveInterval, TimeUnit unit) throws IOException {
+        this(hostname, port, maxPayloadSize, resolver, resolveInterval, unit, null);
+    }
+
+    /**
+     * @param resolverThread
+     *     the thread resolving the host name again, shared with other transports and
+     *     shut down by its owner, or null to start one of its own if needed
+     */
+    UdpTransport(String hostname, int port, int maxPayloadSize, AddressResolver resolver,
+                 long resolveInterval, TimeUnit unit, ScheduledExecutorService resolverThread) throws IOException {
+        if (maxPayloadSize < 0 || maxPayloadSize > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("max payload size must be between 0 and " + MAX_PAYLOAD_SIZE);
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver must be set");
+        }
+        if (resolveInterval < 0) {
+            throw new IllegalArgumentException("resolve interval must not be negative");
+        }
+        this.hostname = hostname;
+        this.port = port;
+        this.resolver = resolver;
+        /* An unknown host fails sends, as it always has, until the resolver resolves it */
+        if (!resolve()) {
+            this.address = InetSocketAddress.createUnresolved(hostname, port);
+        }
+        this.maxPayloadSize = maxPayloadSize > 0 ? maxPayloadSize : defaultPayloadSize(address);
+        this.channel = DatagramChannel.open();
+        if (resolveInterval > 0) {
+            this.ownResolverThread = resolverThread == null ? newResolverThread(hostname) : null;
+            this.resolution = (resolverThread == null ? ownResolverThread : resolverThread).scheduleWithFixedDelay(
+                    new Runnable() {
+                        @Override public void run() {
+                            resolve();
+                        }
+                    }, resolveInterval, resolveInterval, unit);
+        } else {
+            this.ownResolverThread = null;
+            this.resolution = null;
+        }
+    }
+
+    /**
+     * @return a daemon thread for resolving the given host name again, which transports
+     *     sending to it can share
+     */
+    static ScheduledExecutorService newResolverThread(final String hostname) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                final Thread result = new Thread(r, "StatsD-resolver-" + hostname);
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Resolve the host name, switching to its new address if it has changed.
+     *
+     * @return false if the host name could not be resolved
+     */
+    boolean resolve() {
+        final long start = System.nanoTime();
+        try {
+            final InetSocketAddress resolved = resolver.resolve(hostname, port);
+            if (resolved != null && !resolved.isUnresolved() && !resolved.equals(address)) {
+                address = resolved;
+            }
+            return resolved != null && !resolved.isUnresolved();
+        } catch (Exception e) {
+            return false;
+        } finally {
+            resolutionLatencyNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return how long the most recent resolution of the host name took
+     */
+    public long getResolutionLatencyNanos() {
+        return resolutionLatencyNanos;
+    }
+
+    /**
+     * @return where the transport is sending to, or will once it next sends
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    static int defaultPayloadSize(InetSocketAddress address) {
+        if (address.getAddress() != null && address.getAddress().isLoopbackAddress()) {
+            return DEFAULT_LOOPBACK_PAYLOAD_SIZE;
+        }
+        return DEFAULT_REMOTE_PAYLOAD_SIZE;
+    }
+
+    @Override
+    public void write(ByteBuffer payload) throws IOException {
+        final InetSocketAddress target = address;
+        DatagramChannel current = target == connectedAddress ? channel : connect(target);
+        final int size = payload.remaining();
+        int sent;
+        for (;;) {
+            try {
+                sent = write(current, payload);
+                break;
+            } catch (ClosedByInterruptException e) {
+                /* The caller was interrupted; whoever sends next reopens the channel */
+                throw e;
+            } catch (ClosedChannelException e) {
+                /* Retired by a later move, or closed by an interrupted sender */
+                final DatagramChannel latest = reopen(current);
+                if (latest == null) {
+                    throw e;
+                }
+                current = latest;
+            }
+        }
+        if (sent != size) {
+            throw new IOException(
+                    String.format(
+                        "Could not send entirely stat to host %s:%d. Only sent %d bytes out of %d bytes",
+                        target.getHostName(),
+                        target.getPort(),
+                        sent,
+                        size));
+        }
+    }
+
+    private static int write(DatagramChannel channel, ByteBuffer payload) throws IOException {
+        try {
+            return channel.write(payload);
+        } catch (PortUnreachableException e) {
+            /* Reports an earlier datagram which found no listener, not this one */
+            return channel.write(payload);
+        }
+    }
+
+    /**
+     * Sends one datagram per payload. The JDK has no equivalent of
+     * <code>sendmmsg</code>, so this costs one system call per payload.
+     */
+    @Override
+    public void write(ByteBuffer[] payloads, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            write(payloads[i]);
+        }
+    }
+
+    @Override
+    public void flush() {
+        /* Every write is sent immediately */
+    }
+
+    @Override
+    public int maxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (resolution != null) {
+            resolution.cancel(false);
+        }
+        if (ownResolverThread != null) {
+            ownResolverThread.shutdownNow();
+        }
+        if (retired != null) {
+            retired.close();
+        }
+        channel.close();
+    }
+
+    /**
+     * A channel is an interruptible channel, closed for good when a thread sending
+     * through it is interrupted, so an open transport replaces it with a new one
+     * connected to the same address.
+     *
+     * @return the channel to send through instead of the closed one, or null if the
+     *     transport is closed
+     */
+    private synchronized DatagramChannel reopen(DatagramChannel closedChannel) throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (channel != closedChannel) {
+            return channel;
+        }
+        final DatagramChannel next = DatagramChannel.open();
+        try {
+            next.connect(connectedAddress);
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+        channel = next;
+        return next;
+    }
+
+    /**
+     * Connects the channel to the address every send then goes to. Done lazily, so a
+     * server which cannot be reached yet does not fail the client, and again whenever
+     * the host name resolves to a new address. A connected channel is never
+     * reconnected, as a concurrent send would fail; a new one is connected instead,
+     * and the old one stays open until the next move. A sender still holding it then
+     * moves on to the new one.
+     *
+     * @return the channel connected to the target
+     */
+    private synchronized DatagramChannel connect(InetSocketAddress target) throws IOException {
+        if (target == connectedAddress) {
+            return channel;
+        }
+        if (closed) {
+            throw new IOException("Transport to " + hostname + " is closed");
+        }
+        if (connectedAddress == null) {
+            /* No sender has used the first channel yet */
+            channel.connect(target);
+        } else {
+            final DatagramChannel next = DatagramChannel.open();
+            try {
+                next.connect(target);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+            if (retired != null) {
+                retired.close();
+            }
+            retired = channel;
+            channel = next;
+        }
+        connectedAddress = target;
+        return channel;
+    }
+}
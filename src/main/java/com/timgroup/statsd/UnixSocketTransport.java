@@ -0,0 +1,218 @@
+package com.timgroup.statsd;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Sends payloads to an agent on the same host over a Unix domain socket, skipping the
+ * IP stack entirely. Unlike UDP, a slow agent pushes back on the sender instead of
+ * silently losing data, and payloads are not bound by the network MTU.
+ *
+ * <p>The JDK only offers Unix domain sockets as streams, from Java 16 on, so this
+ * transport speaks the agent's stream socket protocol: every payload is preceded by
+ * its length as a 32 bit little-endian integer. The agent must listen on a stream
+ * socket (<code>dogstatsd_stream_socket</code>). The socket classes are looked up
+ * reflectively, so this class loads on older runtimes and simply reports itself as
+ * unsupported there.</p>
+ *
+ * <p>The connection is opened on the first write and reopened after a failure, so an
+ * agent which starts late or restarts is picked up again.</p>
+ */
+public final class UnixSocketTransport implements Transport {
+
+    /** The payload size matching the agent's default socket read buffer */
+    public static final int DEFAULT_PAYLOAD_SIZE = 8192;
+
+    private static final Method ADDRESS_OF;
+    private static final Method OPEN_CHANNEL;
+    private static final Object UNIX_FAMILY;
+
+    static {
+        Method addressOf = null;
+        Method openChannel = null;
+        Object unixFamily = null;
+        try {
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+            openChannel = SocketChannel.class.getMethod("open", Class.forName("java.net.ProtocolFamily"));
+            unixFamily = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+        } catch (Exception e) {
+            addressOf = null;
+            openChannel = null;
+            unixFamily = null;
+        }
+        ADDRESS_OF = addressOf;
+        OPEN_CHANNEL = openChannel;
+        UNIX_FAMILY = unixFamily;
+    }
+
+    private final String path;
+    private final SocketAddress address;
+    private final ByteBuffer[] single = new ByteBuffer[1];
+    /* Length headers and payloads, interleaved for a gathering write */
+    private ByteBuffer[] headers = new ByteBuffer[0];
+    private ByteBuffer[] frames = new ByteBuffer[0];
+
+    private final int maxPayloadSize;
+
+    private SocketChannel channel;
+    private boolean closed;
+
+    /**
+     * Create a transport sending payloads of up to {@link #DEFAULT_PAYLOAD_SIZE} bytes.
+     *
+     * @param path
+     *     the file system path of the agent's socket
+     * @throws IOException
+     *     if this runtime has no Unix domain socket support
+     */
+    public UnixSocketTransport(String path) throws IOException {
+        this(path, DEFAULT_PAYLOAD_SIZE);
+    }
+
+    /**
+     * @param path
+     *     the file system path of the agent's socket
+     * @param maxPayloadSize
+     *     the largest payload to send, which the agent's
+     *     <code>dogstatsd_buffer_size</code> must be able to hold, or 0 for
+     *     {@link #DEFAULT_PAYLOAD_SIZE}
+     * @throws IOException
+     *     if this runtime has no Unix domain socket support
+     */
+    public UnixSocketTransport(String path, int maxPayloadSize) throws IOException {
+        if (maxPayloadSize < 0) {
+            throw new IllegalArgumentException("max payload size must not be negative");
+        }
+        if (!isSupported()) {
+            throw new IOException("Unix domain sockets need Java 16 or later");
+        }
+        this.path = path;
+        this.maxPayloadSize = maxPayloadSize > 0 ? maxPayloadSize : DEFAULT_PAYLOAD_SIZE;
+        this.address = (SocketAddress) invoke(ADDRESS_OF, null, path);
+    }
+
+    /**
+     * @return true if this runtime can open Unix domain sockets
+     */
+    public static boolean isSupported() {
+        return ADDRESS_OF != null;
+    }
+
+    @Override
+    public synchronized void write(ByteBuffer payload) throws IOException {
+        single[0] = payload;
+        try {
+            write(single, 0, 1);
+        } finally {
+            single[0] = null;
+        }
+    }
+
+    /**
+     * Sends all the payloads, each framed with its length, in one gathering write.
+     */
+    @Override
+    public synchronized void write(ByteBuffer[] payloads, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Transport to " + path + " is closed");
+        }
+        if (channel == null) {
+            channel = connect();
+        }
+        if (headers.length < length) {
+            grow(length);
+        }
+        long remaining = 0;
+        for (int i = 0; i < length; i++) {
+            final ByteBuffer payload = payloads[offset + i];
+            final ByteBuffer header = headers[i];
+            header.clear();
+            header.putInt(payload.remaining());
+            header.flip();
+            frames[2 * i] = header;
+            frames[2 * i + 1] = payload;
+            remaining += header.remaining() + payload.remaining();
+        }
+        try {
+            while (remaining > 0) {
+                remaining -= channel.write(frames, 0, 2 * length);
+            }
+        } catch (IOException e) {
+            /* A partly written frame leaves the stream unusable; start over on the next write */
+            disconnect();
+            throw e;
+        } finally {
+            for (int i = 0; i < length; i++) {
+                frames[2 * i + 1] = null;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        /* Every write is sent immediately */
+    }
+
+    @Override
+    public int maxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            final SocketChannel open = channel;
+            channel = null;
+            open.close();
+        }
+    }
+
+    private void grow(int length) {
+        final ByteBuffer[] grown = new ByteBuffer[length];
+        System.arraycopy(headers, 0, grown, 0, headers.length);
+        for (int i = headers.length; i < length; i++) {
+            grown[i] = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        headers = grown;
+        frames = new ByteBuffer[2 * length];
+    }
+
+    private SocketChannel connect() throws IOException {
+        final SocketChannel opened = (SocketChannel) invoke(OPEN_CHANNEL, null, UNIX_FAMILY);
+        try {
+            opened.connect(address);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        return opened;
+    }
+
+    private void disconnect() {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        } finally {
+            channel = null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object argument) throws IOException {
+        try {
+            return method.invoke(target, argument);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.github.arnabk.statsd;
 
+import com.timgroup.statsd.Counter;
 import com.timgroup.statsd.DummyStatsDServer;
+import com.timgroup.statsd.Event;
+import com.timgroup.statsd.MemoryTransport;
+import com.timgroup.statsd.ServiceCheck;
+import com.timgroup.statsd.StatsDClientErrorHandler;
 import java.net.SocketException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
 
 public class BlockingStatsDClientTest {
 
@@ -295,4 +304,216 @@ public class BlockingStatsDClientTest {
         assertThat(server.messagesReceived(), contains("top.level.value:423|g"));
     }
 
+    @Test public void
+    sends_through_given_transport() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final BlockingStatsDClient memory_client = new BlockingStatsDClient("my.prefix", transport, null, null);
+        memory_client.count("mycount", 24);
+        memory_client.gauge("mygauge", 1);
+
+        assertThat(transport.messages(), contains("my.prefix.mycount:24|c", "my.prefix.mygauge:1|g"));
+        assertThat(transport.payloadCount(), is(2L));
+    }
+
+    @Test public void
+    sends_values_through_handles() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final BlockingStatsDClient handle_client = new BlockingStatsDClient("my.prefix", transport, new String[] {"app:bar"}, null);
+        final Counter counter = handle_client.counter("mycount", "foo:bar", "baz");
+        counter.increment();
+        counter.count(5);
+        handle_client.gauge("mygauge").record(0.5);
+        handle_client.timer("mytime").record(25);
+        handle_client.histogram("myhist", "foo:bar").record(7);
+
+        assertThat(transport.messages(), contains(
+                "my.prefix.mycount:1|c|#app:bar,baz,foo:bar",
+                "my.prefix.mycount:5|c|#app:bar,baz,foo:bar",
+                String.format("my.prefix.mygauge:%f|g|#app:bar", 0.5),
+                "my.prefix.mytime:25|ms|#app:bar",
+                "my.prefix.myhist:7|h|#app:bar,foo:bar"));
+    }
+
+    @Test public void
+    sends_events_and_service_checks() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final BlockingStatsDClient event_client = new BlockingStatsDClient("my.prefix", transport, new String[] {"app:bar"}, null);
+        event_client.recordEvent(Event.builder().withTitle("title1").withText("text1").withDate(1234567000).build(), "baz");
+        event_client.recordServiceCheckRun(ServiceCheck.builder().withName("my_check").withStatus(ServiceCheck.Status.OK).withMessage("fine").build());
+
+        assertThat(transport.messages(), contains(
+                "_e{16,5}:my.prefix.title1|text1|d:1234567|#app:bar,baz",
+                "_sc|my_check|0|#app:bar|m:fine"));
+    }
+
+    @Test public void
+    reports_a_service_check_without_a_status_to_the_error_handler() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final List<String> errors = new ArrayList<String>();
+        final BlockingStatsDClient check_client = new BlockingStatsDClient("my.prefix", transport, null, new StatsDClientErrorHandler() {
+            @Override public void handle(Exception e) {
+                errors.add(e.getMessage());
+            }
+        });
+        check_client.recordServiceCheckRun(ServiceCheck.builder().withName("my_check").build());
+
+        assertThat(errors, contains("Service check my_check has no status"));
+        assertThat(transport.payloadCount(), is(0L));
+    }
+
+    @Test public void
+    sends_counter_from_builder_client() throws Exception {
+
+        final BlockingStatsDClient builder_client = new BlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withConstantTags("app:bar")
+                .withTagCacheSize(16)
+                .build();
+        try {
+            builder_client.count("mycount", 24, "foo:bar");
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c|#app:bar,foo:bar"));
+        } finally {
+            builder_client.stop();
+        }
+    }
+
+    @Test public void
+    opens_its_socket_on_first_use_when_started_lazily() throws Exception {
+
+        final BlockingStatsDClient lazy_client = new BlockingStatsDClientBuilder()
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withLazyStart(true)
+                .build();
+        try {
+            lazy_client.gauge("mygauge", 423);
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("mygauge:423|g"));
+        } finally {
+            lazy_client.stop();
+        }
+    }
+
+    @Test public void
+    reuses_its_send_buffer_and_grows_it_for_long_messages() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport(16, true);
+        final BlockingStatsDClient small_client = new BlockingStatsDClient("my.prefix", transport, null, null);
+        small_client.count("a", 1);
+        small_client.recordGaugeValue("a.rather.long.gauge.name", 0.5, "foo:bar");
+        small_client.count("b", 2);
+
+        assertThat(transport.payloads(), contains(
+                "my.prefix.a:1|c",
+                "my.prefix.a.rather.long.gauge.name:0.500000|g|#foo:bar",
+                "my.prefix.b:2|c"));
+    }
+
+    @Test public void
+    batches_messages_until_the_payload_is_full_or_flushed() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport(16, true);
+        final BlockingStatsDClient batching_client = new BlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withBatching(true)
+                .build();
+        batching_client.count("a", 1);
+        batching_client.count("a", 2);
+        assertThat(transport.payloadCount(), is(0L));
+
+        batching_client.count("a", 3);
+        batching_client.count("a.rather.long.name", 4);
+        batching_client.count("a", 5);
+        batching_client.flush();
+
+        assertThat(transport.payloads(), contains(
+                "a:1|c\na:2|c",
+                "a:3|c",
+                "a.rather.long.name:4|c",
+                "a:5|c"));
+    }
+
+    @Test(timeout=10000) public void
+    sends_what_other_threads_have_batched_on_stop() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport(1024, true);
+        final BlockingStatsDClient batching_client = new BlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withBatching(true)
+                .build();
+        final CountDownLatch batched = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final Thread producer = new Thread(new Runnable() {
+            @Override public void run() {
+                batching_client.count("a", 1);
+                batching_client.count("b", 2);
+                batched.countDown();
+                try {
+                    stopped.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        try {
+            batched.await();
+            batching_client.stop();
+
+            assertThat(producer.isAlive(), is(true));
+            assertThat(transport.payloads(), contains("a:1|c\nb:2|c"));
+        } finally {
+            stopped.countDown();
+            producer.join();
+        }
+    }
+
+    @Test public void
+    sends_the_batch_of_a_thread_which_has_died_once_another_thread_starts_batching() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport(1024, true);
+        final BlockingStatsDClient batching_client = new BlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withBatching(true)
+                .build();
+        final Thread producer = new Thread(new Runnable() {
+            @Override public void run() {
+                batching_client.count("a", 1);
+                batching_client.count("b", 2);
+            }
+        });
+        producer.start();
+        producer.join();
+        batching_client.count("c", 3);
+        assertThat(transport.payloads(), contains("a:1|c\nb:2|c"));
+
+        batching_client.stop();
+        assertThat(transport.payloads(), contains("a:1|c\nb:2|c", "c:3|c"));
+    }
+
+    @Test(timeout=10000) public void
+    keeps_sending_after_a_thread_is_interrupted_while_sending() throws Exception {
+
+        final Thread interrupted = new Thread(new Runnable() {
+            @Override public void run() {
+                Thread.currentThread().interrupt();
+                client.count("interrupted", 1);
+            }
+        });
+        interrupted.start();
+        interrupted.join();
+        client.count("mycount", 2);
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains("my.prefix.mycount:2|c"));
+    }
 }
@@ -87,4 +87,21 @@ public class BlockingStatsDEventClientTest {
         assertThat(server.messagesReceived(), contains("_e{5,7}:title|message|d:1|h:localhost|k:testAggregationKey|p:normal|s:sourceTypeName|t:error|#tag2:tag2,tag1:tag1"));
     }
 
+    @Test public void
+    sends_event_from_builder_client() throws Exception {
+
+        final BlockingStatsDEventClient builder_client = new StatsDEventClientBuilder()
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withConstantTags("app:bar")
+                .buildBlocking();
+        try {
+            builder_client.event("title", "message", "tag1:tag1");
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("_e{5,7}:title|message|h:localhost|#app:bar,tag1:tag1"));
+        } finally {
+            builder_client.stop();
+        }
+    }
 }
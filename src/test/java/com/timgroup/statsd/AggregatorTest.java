@@ -0,0 +1,127 @@
+package com.timgroup.statsd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+
+public class AggregatorTest {
+
+    private final Aggregator aggregator = new Aggregator();
+    private final RecordingSink sink = new RecordingSink();
+
+    @Test public void
+    sums_counters_per_aspect_and_tags() throws Exception {
+        aggregator.count("hits", 1, new String[] {"a:b"});
+        aggregator.count("hits", 2, new String[] {"a:b"});
+        aggregator.count("hits", 5, null);
+        aggregator.count("hits", 7, new String[0]);
+        aggregator.flush(sink);
+
+        assertThat(sink.lines, containsInAnyOrder("hits:3|c[a:b]", "hits:12|c[]"));
+    }
+
+    @Test public void
+    keeps_last_gauge_value() throws Exception {
+        aggregator.gauge("load", 1L, null);
+        aggregator.gauge("load", 3L, null);
+        aggregator.gauge("temp", 0.5, null);
+        aggregator.gauge("temp", 1.5, null);
+        aggregator.flush(sink);
+
+        assertThat(sink.lines, containsInAnyOrder("load:3|g[]", "temp:1.5|g[]"));
+    }
+
+    @Test public void
+    keeps_unique_set_values() throws Exception {
+        aggregator.set("users", "alice", null);
+        aggregator.set("users", "bob", null);
+        aggregator.set("users", "alice", null);
+        aggregator.flush(sink);
+
+        assertThat(sink.lines, containsInAnyOrder("users:alice|s[]", "users:bob|s[]"));
+    }
+
+    @Test public void
+    flushes_histogram_summaries_as_gauges() throws Exception {
+        aggregator.histogram("latency", 4.0, new String[] {"a:b"});
+        aggregator.histogram("latency", 4.0, new String[] {"a:b"});
+        aggregator.time("query", 5, null);
+        aggregator.flush(sink);
+
+        assertThat(sink.lines, containsInAnyOrder(
+                "latency.median:4.0|g[a:b]", "latency.95percentile:4.0|g[a:b]", "latency.99percentile:4.0|g[a:b]",
+                "latency.min:4.0|g[a:b]", "latency.max:4.0|g[a:b]", "latency.avg:4.0|g[a:b]", "latency.count:2|g[a:b]",
+                "query.median:5.0|g[]", "query.95percentile:5.0|g[]", "query.99percentile:5.0|g[]",
+                "query.min:5.0|g[]", "query.max:5.0|g[]", "query.avg:5.0|g[]", "query.count:1|g[]"));
+    }
+
+    @Test public void
+    names_percentiles_like_the_agent() throws Exception {
+        assertEquals("median", Aggregator.percentileSuffix(0.5));
+        assertEquals("95percentile", Aggregator.percentileSuffix(0.95));
+        assertEquals("99.9percentile", Aggregator.percentileSuffix(0.999));
+    }
+
+    @Test public void
+    does_not_share_tag_arrays_with_callers() throws Exception {
+        String[] tags = {"a:b"};
+        aggregator.count("hits", 1, tags);
+        tags[0] = "c:d";
+        aggregator.count("hits", 1, tags);
+        aggregator.flush(sink);
+
+        assertThat(sink.lines, containsInAnyOrder("hits:1|c[a:b]", "hits:1|c[c:d]"));
+    }
+
+    @Test public void
+    only_flushes_series_updated_since_last_flush() throws Exception {
+        aggregator.count("hits", 1, null);
+        aggregator.flush(sink);
+        sink.lines.clear();
+
+        aggregator.flush(sink);
+        assertThat(sink.lines, empty());
+
+        aggregator.count("hits", 4, null);
+        aggregator.flush(sink);
+        assertThat(sink.lines, contains("hits:4|c[]"));
+    }
+
+    @Test public void
+    evicts_idle_series() throws Exception {
+        aggregator.count("hits", 1, null);
+        aggregator.gauge("load", 1L, null);
+        assertEquals(2, aggregator.size());
+
+        aggregator.flush(sink);
+        aggregator.flush(sink);
+        aggregator.flush(sink);
+
+        assertEquals(0, aggregator.size());
+    }
+
+    static final class RecordingSink implements Aggregator.Sink {
+        final List<String> lines = new ArrayList<String>();
+
+        @Override public void count(String aspect, long delta, String[] tags) {
+            lines.add(aspect + ":" + delta + "|c" + Arrays.toString(tags));
+        }
+        @Override public void gauge(String aspect, long value, String[] tags) {
+            lines.add(aspect + ":" + value + "|g" + Arrays.toString(tags));
+        }
+        @Override public void gauge(String aspect, double value, String[] tags) {
+            lines.add(aspect + ":" + value + "|g" + Arrays.toString(tags));
+        }
+        @Override public void set(String aspect, String value, String[] tags) {
+            lines.add(aspect + ":" + value + "|s" + Arrays.toString(tags));
+        }
+    }
+}
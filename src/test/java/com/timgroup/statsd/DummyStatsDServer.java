@@ -11,17 +11,20 @@ import java.util.List;
 public final class DummyStatsDServer {
     private final List<String> messagesReceived = new ArrayList<String>();
     private final DatagramSocket server;
+    private final Thread thread;
 
     public DummyStatsDServer(int port) throws SocketException {
         server = new DatagramSocket(port);
-        Thread thread = new Thread(new Runnable() {
+        /* Room for bursts the reader thread falls behind on, so the kernel does not drop them */
+        server.setReceiveBufferSize(4 * 1024 * 1024);
+        thread = new Thread(new Runnable() {
             @Override
             public void run() {
                 while(!server.isClosed()) {
                     try {
-                        final DatagramPacket packet = new DatagramPacket(new byte[1500], 1500);
+                        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
                         server.receive(packet);
-                        for(String msg : new String(packet.getData()).split("\n")) {
+                        for(String msg : new String(packet.getData(), 0, packet.getLength()).split("\n")) {
                             messagesReceived.add(msg.trim());
                         }
                     } catch (IOException e) {
@@ -48,6 +51,12 @@ public final class DummyStatsDServer {
 
     public void close() {
         server.close();
+        /* The port is only released once the reader has returned from receive */
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
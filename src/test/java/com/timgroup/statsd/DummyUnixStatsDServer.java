@@ -0,0 +1,111 @@
+package com.timgroup.statsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for an agent listening on a Unix domain stream socket. Looks the socket
+ * classes up reflectively, like {@link UnixSocketTransport}, so the tests compile on
+ * runtimes without them.
+ */
+public final class DummyUnixStatsDServer {
+    private final List<String> messagesReceived = new ArrayList<String>();
+    private final File socketFile;
+    private final ServerSocketChannel server;
+    private final List<SocketChannel> connections = new ArrayList<SocketChannel>();
+
+    public DummyUnixStatsDServer(File socketFile) throws Exception {
+        this.socketFile = socketFile;
+        socketFile.delete();
+        final Object unixFamily = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+        server = (ServerSocketChannel) ServerSocketChannel.class
+                .getMethod("open", Class.forName("java.net.ProtocolFamily"))
+                .invoke(null, unixFamily);
+        final Object address = Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", String.class)
+                .invoke(null, socketFile.getPath());
+        ServerSocketChannel.class.getMethod("bind", SocketAddress.class).invoke(server, address);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(server.isOpen()) {
+                    try {
+                        final SocketChannel connection = server.accept();
+                        synchronized (connections) {
+                            connections.add(connection);
+                        }
+                        receive(connection);
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void receive(SocketChannel connection) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (true) {
+                header.clear();
+                if (!readFully(connection, header)) {
+                    return;
+                }
+                final ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+                if (!readFully(connection, payload)) {
+                    return;
+                }
+                for(String msg : new String(payload.array(), "UTF-8").split("\n")) {
+                    synchronized (messagesReceived) {
+                        messagesReceived.add(msg.trim());
+                    }
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static boolean readFully(SocketChannel connection, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (connection.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void waitForMessage() {
+        while (messagesReceived().isEmpty()) {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    public List<String> messagesReceived() {
+        synchronized (messagesReceived) {
+            return new ArrayList<String>(messagesReceived);
+        }
+    }
+
+    public void close() throws IOException {
+        server.close();
+        synchronized (connections) {
+            for (SocketChannel connection : connections) {
+                connection.close();
+            }
+        }
+        socketFile.delete();
+    }
+
+}
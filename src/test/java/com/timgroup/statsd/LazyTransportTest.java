@@ -0,0 +1,75 @@
+package com.timgroup.statsd;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LazyTransportTest {
+
+    @Test public void
+    opens_the_transport_on_the_first_write() throws Exception {
+        final MemoryTransport memory = new MemoryTransport();
+        final AtomicInteger opened = new AtomicInteger();
+        final LazyTransport transport = new LazyTransport(new Callable<Transport>() {
+            @Override public Transport call() {
+                opened.incrementAndGet();
+                return memory;
+            }
+        }, 512);
+
+        assertEquals(512, transport.maxPayloadSize());
+        assertEquals(0, opened.get());
+
+        transport.write(ByteBuffer.wrap("foo:1|c".getBytes("UTF-8")));
+        transport.write(ByteBuffer.wrap("foo:2|c".getBytes("UTF-8")));
+
+        assertEquals(1, opened.get());
+        assertThat(memory.payloads(), contains("foo:1|c", "foo:2|c"));
+    }
+
+    @Test public void
+    waits_for_the_retry_interval_after_failing_to_open() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final LazyTransport transport = new LazyTransport(new Callable<Transport>() {
+            @Override public Transport call() throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("no route to host");
+                }
+                return new MemoryTransport();
+            }
+        }, 512, 50, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.write(ByteBuffer.wrap("foo:1|c".getBytes("UTF-8")));
+                fail("expected the write to fail");
+            } catch (IOException expected) {
+            }
+        }
+        assertEquals(1, attempts.get());
+
+        Thread.sleep(60L);
+        transport.write(ByteBuffer.wrap("foo:1|c".getBytes("UTF-8")));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test(expected = IOException.class) public void
+    does_not_open_once_closed() throws Exception {
+        final LazyTransport transport = new LazyTransport(new Callable<Transport>() {
+            @Override public Transport call() {
+                return new MemoryTransport();
+            }
+        }, 512);
+        transport.close();
+        transport.write(ByteBuffer.wrap("foo:1|c".getBytes("UTF-8")));
+    }
+}
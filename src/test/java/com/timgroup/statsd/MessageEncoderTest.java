@@ -0,0 +1,74 @@
+package com.timgroup.statsd;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.commons.math3.util.Precision;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageEncoderTest {
+
+    private final MessageEncoder encoder = new MessageEncoder(16);
+
+    @Test public void
+    renders_longs_like_long_to_string() throws Exception {
+        long[] values = {0, 1, -1, 9, 10, -10, 123456789, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            assertEquals(Long.toString(value), encoder.reset().putLong(value).toString());
+        }
+    }
+
+    @Test public void
+    renders_doubles_like_the_legacy_formatter() throws Exception {
+        double[] values = {0, -0.0, 0.423, -0.423, 123.45678901234567890, 123456789012345.67890,
+            0.0000005, 0.0000015, 2.5e-7, -1e-9, 999999.9999995, 1e6, 1.5e6, 1e300,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE};
+        for (double value : values) {
+            assertEquals(legacy(value), encoder.reset().putDouble(value).toString());
+        }
+    }
+
+    @Test public void
+    renders_random_doubles_like_the_legacy_formatter() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 8);
+            assertEquals(legacy(value), encoder.reset().putDouble(value).toString());
+        }
+        for (int i = 0; i < 10000; i++) {
+            double value = random.nextInt(2000000) / 1e7;
+            assertEquals(legacy(value), encoder.reset().putDouble(value).toString());
+        }
+    }
+
+    @Test public void
+    renders_strings_as_utf8() throws Exception {
+        String value = "caf\u00e9.\u20ac.\ud83d\ude00.\ud83d";
+        assertEquals(new String(value.getBytes("UTF-8"), "UTF-8"), encoder.reset().putString(value).toString());
+        assertEquals(value.getBytes("UTF-8").length, encoder.length());
+    }
+
+    @Test public void
+    renders_tags_in_reverse_after_constant_tags() throws Exception {
+        byte[] constantTags = NonBlockingStatsDClient.tagString(new String[] {"instance:foo", "app:bar"}, null).getBytes("UTF-8");
+
+        assertEquals("", encoder.reset().putTags(null, null).toString());
+        assertEquals("|#baz,foo:bar", encoder.reset().putTags(null, new String[] {"foo:bar", "baz"}).toString());
+        assertEquals("|#app:bar,instance:foo", encoder.reset().putTags(constantTags, new String[0]).toString());
+        assertEquals("|#app:bar,instance:foo,baz", encoder.reset().putTags(constantTags, new String[] {"baz"}).toString());
+    }
+
+    @Test public void
+    drops_bytes_from_either_end() throws Exception {
+        encoder.reset().putString("a:1|c\nb:2|c\nc:3|c");
+
+        assertEquals("b:2|c\nc:3|c", encoder.discardFront(6).toString());
+        assertEquals("b:2|c", encoder.truncate(5).toString());
+    }
+
+    private static String legacy(double value) {
+        return String.format(Locale.US, "%f", Precision.round(value, 6));
+    }
+}
@@ -0,0 +1,126 @@
+package com.timgroup.statsd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageRingBufferTest {
+
+    @Test public void
+    rounds_capacity_up_to_a_power_of_two() throws Exception {
+        assertEquals(8, new MessageRingBuffer(5, OverflowPolicy.DROP_NEWEST, 0).capacity());
+        assertEquals(8, new MessageRingBuffer(8, OverflowPolicy.DROP_NEWEST, 0).capacity());
+    }
+
+    @Test public void
+    delivers_messages_in_order() throws Exception {
+        MessageRingBuffer queue = new MessageRingBuffer(4, OverflowPolicy.DROP_NEWEST, 0);
+        assertTrue(queue.isEmpty());
+        for (int round = 0; round < 3; round++) {
+            offer(queue, "a");
+            offer(queue, "b");
+            assertFalse(queue.isEmpty());
+            assertEquals("a", take(queue));
+            assertEquals("b", take(queue));
+            assertTrue(queue.isEmpty());
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test public void
+    drops_newest_when_full() throws Exception {
+        MessageRingBuffer queue = new MessageRingBuffer(2, OverflowPolicy.DROP_NEWEST, 0);
+        offer(queue, "a");
+        offer(queue, "b");
+        assertNull(queue.claim());
+        assertEquals(1, queue.droppedMessages());
+        assertEquals("a", take(queue));
+        assertEquals("b", take(queue));
+    }
+
+    @Test public void
+    drops_oldest_when_full() throws Exception {
+        MessageRingBuffer queue = new MessageRingBuffer(2, OverflowPolicy.DROP_OLDEST, 0);
+        offer(queue, "a");
+        offer(queue, "b");
+        offer(queue, "c");
+        assertEquals(1, queue.droppedMessages());
+        assertEquals("b", take(queue));
+        assertEquals("c", take(queue));
+    }
+
+    @Test(timeout=5000) public void
+    blocks_until_timeout_when_full() throws Exception {
+        MessageRingBuffer queue = new MessageRingBuffer(2, OverflowPolicy.BLOCK, TimeUnit.MILLISECONDS.toNanos(50));
+        offer(queue, "a");
+        offer(queue, "b");
+        long start = System.nanoTime();
+        assertNull(queue.claim());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, queue.droppedMessages());
+    }
+
+    @Test(timeout=10000) public void
+    delivers_every_message_from_concurrent_producers() throws Exception {
+        final MessageRingBuffer queue = new MessageRingBuffer(64, OverflowPolicy.BLOCK, TimeUnit.SECONDS.toNanos(5));
+        final int producers = 8;
+        final int perProducer = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        offer(queue, producer + ":" + i);
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        start.countDown();
+
+        List<String> received = new ArrayList<String>();
+        int[] next = new int[producers];
+        while (received.size() < producers * perProducer) {
+            String message = take(queue);
+            String[] parts = message.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            assertEquals(next[producer]++, Integer.parseInt(parts[1]));
+            received.add(message);
+        }
+        assertEquals(0, queue.droppedMessages());
+        assertEquals(producers * perProducer, Collections.unmodifiableList(received).size());
+    }
+
+    private static void offer(MessageRingBuffer queue, String message) {
+        MessageRingBuffer.Slot slot = queue.claim();
+        if (slot != null) {
+            slot.message().putString(message);
+            queue.publish(slot);
+        }
+    }
+
+    private static String take(MessageRingBuffer queue) throws InterruptedException {
+        MessageRingBuffer.Slot slot = queue.poll(5, TimeUnit.SECONDS);
+        try {
+            return slot.message().toString();
+        } finally {
+            queue.release(slot);
+        }
+    }
+}
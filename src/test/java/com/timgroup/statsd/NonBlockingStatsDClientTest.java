@@ -1,14 +1,30 @@
 package com.timgroup.statsd;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class NonBlockingStatsDClientTest {
 
@@ -294,4 +310,706 @@ public class NonBlockingStatsDClientTest {
         assertThat(server.messagesReceived(), contains("top.level.value:423|g"));
     }
 
+    @Test public void
+    sends_counter_from_builder_client() throws Exception {
+
+        final NonBlockingStatsDClient builder_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withQueueSize(16)
+                .withOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .build();
+        try {
+            builder_client.count("mycount", 24, "foo:bar");
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c|#foo:bar"));
+            assertEquals(0, builder_client.getDroppedMessages());
+        } finally {
+            builder_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    sends_aggregated_values_on_flush() throws Exception {
+
+        final NonBlockingStatsDClient aggregating_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withAggregation(true)
+                .withAggregationFlushInterval(100, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            aggregating_client.incrementCounter("myinc", "foo:bar");
+            aggregating_client.incrementCounter("myinc", "foo:bar");
+            aggregating_client.count("myinc", 3, "foo:bar");
+            aggregating_client.gauge("mygauge", 1);
+            aggregating_client.gauge("mygauge", 2);
+            aggregating_client.recordSetValue("myset", "a");
+            aggregating_client.recordSetValue("myset", "a");
+            while (server.messagesReceived().size() < 3) {
+                Thread.sleep(50L);
+            }
+
+            assertThat(server.messagesReceived(), containsInAnyOrder(
+                    "my.prefix.myinc:5|c|#foo:bar", "my.prefix.mygauge:2|g", "my.prefix.myset:a|s"));
+        } finally {
+            aggregating_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    sends_through_given_transport() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient memory_client = new NonBlockingStatsDClient("my.prefix", transport, new String[] {"app:bar"}, null);
+        try {
+            memory_client.count("mycount", 24);
+            memory_client.gauge("mygauge", 1);
+            while (transport.messages().size() < 2) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(transport.messages(), contains("my.prefix.mycount:24|c|#app:bar", "my.prefix.mygauge:1|g|#app:bar"));
+        } finally {
+            memory_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    sends_queued_messages_on_stop() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient memory_client = new NonBlockingStatsDClient("my.prefix", transport, null, null);
+        for (int i = 0; i < 1000; i++) {
+            memory_client.count("mycount", i);
+        }
+        final ShutdownReport report = memory_client.stop(5, TimeUnit.SECONDS);
+
+        assertEquals(1000, transport.messages().size());
+        assertEquals("my.prefix.mycount:999|c", transport.messages().get(999));
+        assertEquals(0, report.getDiscardedMessages());
+    }
+
+    @Test(timeout=10000) public void
+    discards_what_is_left_when_the_shutdown_timeout_runs_out() throws Exception {
+
+        final MemoryTransport memory = new MemoryTransport(64, true);
+        final Transport slow_transport = new Transport() {
+            @Override public void write(ByteBuffer payload) throws IOException {
+                sleep();
+                memory.write(payload);
+            }
+            @Override public void write(ByteBuffer[] payloads, int offset, int length) throws IOException {
+                sleep();
+                memory.write(payloads, offset, length);
+            }
+            @Override public void flush() { }
+            @Override public int maxPayloadSize() { return memory.maxPayloadSize(); }
+            @Override public void close() { }
+            private void sleep() throws IOException {
+                try {
+                    Thread.sleep(20L);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        final List<String> errors = new ArrayList<String>();
+        final NonBlockingStatsDClient slow_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withTransport(slow_transport)
+                .withSendBatchSize(1)
+                .withShutdownTimeout(0, TimeUnit.MILLISECONDS)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        errors.add(e.getMessage());
+                    }
+                })
+                .build();
+        for (int i = 0; i < 100; i++) {
+            slow_client.count("mycount", i);
+        }
+        slow_client.close();
+        final ShutdownReport report = slow_client.stop(0, TimeUnit.MILLISECONDS);
+
+        assertThat(report.getDiscardedMessages(), greaterThan(0L));
+        assertEquals(100, memory.messages().size() + report.getDiscardedMessages());
+        assertThat(errors, contains("Discarded " + report.getDiscardedMessages() + " messages while stopping the client"));
+    }
+
+    @Test(timeout=10000) public void
+    discards_the_batch_of_a_sender_stuck_writing_past_the_grace_period() throws Exception {
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Transport stuck_transport = new Transport() {
+            @Override public void write(ByteBuffer payload) {
+                writing.countDown();
+                /* Deaf to interrupts, as a transport may be */
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        /* Keep writing */
+                    }
+                }
+            }
+            @Override public void write(ByteBuffer[] payloads, int offset, int length) {
+                write(payloads[offset]);
+            }
+            @Override public void flush() { }
+            @Override public int maxPayloadSize() { return 64; }
+            @Override public void close() { }
+        };
+        final List<String> errors = new ArrayList<String>();
+        final NonBlockingStatsDClient stuck_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withTransport(stuck_transport)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        errors.add(e.getMessage());
+                    }
+                })
+                .build();
+        try {
+            stuck_client.count("mycount", 0);
+            writing.await();
+            for (int i = 1; i < 10; i++) {
+                stuck_client.count("mycount", i);
+            }
+            final long start = System.nanoTime();
+            final ShutdownReport report = stuck_client.stop(0, TimeUnit.MILLISECONDS);
+            final long took = System.nanoTime() - start;
+
+            assertThat(took, lessThanOrEqualTo(NonBlockingStatsDClient.LAST_WRITE_GRACE_NANOS + TimeUnit.MILLISECONDS.toNanos(500)));
+            assertEquals(0, report.getFlushedMessages());
+            assertEquals(10, report.getDiscardedMessages());
+            assertThat(errors, hasItems(
+                    "StatsD sender threads did not stop in time",
+                    "Discarded 10 messages while stopping the client"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    packs_messages_arriving_within_the_linger_time_into_one_payload() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient lingering_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withTransport(transport)
+                .withLinger(500, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            for (int i = 0; i < 3; i++) {
+                lingering_client.count("mycount", i);
+                Thread.sleep(20L);
+            }
+            while (transport.payloadCount() < 1) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(transport.payloads(), contains("my.prefix.mycount:0|c\nmy.prefix.mycount:1|c\nmy.prefix.mycount:2|c"));
+        } finally {
+            lingering_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    keeps_each_producer_in_order_across_sender_threads() throws Exception {
+
+        final List<MemoryTransport> transports = new ArrayList<MemoryTransport>();
+        final NonBlockingStatsDClient sharded_client = new NonBlockingStatsDClientBuilder()
+                .withTransportFactory(new Callable<Transport>() {
+                    @Override public Transport call() {
+                        final MemoryTransport transport = new MemoryTransport();
+                        transports.add(transport);
+                        return transport;
+                    }
+                })
+                .withSenderThreads(4)
+                .build();
+        /* A producer feeds the sender its thread id picks; give each sender one */
+        final Thread[] producers = new Thread[4];
+        final boolean[] fed = new boolean[producers.length];
+        for (int p = 0; p < producers.length;) {
+            final String name = "producer" + p;
+            final Thread producer = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < 250; i++) {
+                        sharded_client.count(name, i);
+                    }
+                }
+            });
+            final int sender = (int) (producer.getId() % producers.length);
+            if (!fed[sender]) {
+                fed[sender] = true;
+                producers[p++] = producer;
+            }
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        sharded_client.stop();
+
+        assertEquals(4, transports.size());
+        for (MemoryTransport transport : transports) {
+            assertEquals(250, transport.messages().size());
+            final String producer = transport.messages().get(0).substring(0, "producer0".length());
+            for (int i = 0; i < 250; i++) {
+                assertEquals(producer + ":" + i + "|c", transport.messages().get(i));
+            }
+        }
+    }
+
+    @Test public void
+    refuses_a_transport_factory_returning_the_same_transport_twice() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        try {
+            new NonBlockingStatsDClientBuilder()
+                    .withTransportFactory(new Callable<Transport>() {
+                        @Override public Transport call() {
+                            return transport;
+                        }
+                    })
+                    .withSenderThreads(2)
+                    .build();
+            fail("expected the shared transport to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("a transport cannot be shared by several sender threads, the transport factory must create a new one on each call", e.getMessage());
+        }
+    }
+
+    @Test public void
+    resolves_the_host_name_on_one_thread_for_all_sender_threads() throws Exception {
+
+        final NonBlockingStatsDClient sharded_client = new NonBlockingStatsDClientBuilder()
+                .withHostname("127.0.0.1")
+                .withPort(STATSD_SERVER_PORT)
+                .withSenderThreads(4)
+                .withResolveInterval(1, TimeUnit.MINUTES)
+                .build();
+        try {
+            int resolverThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("StatsD-resolver-127.0.0.1")) {
+                    resolverThreads++;
+                }
+            }
+            assertEquals(1, resolverThreads);
+        } finally {
+            sharded_client.stop();
+        }
+    }
+
+    @Test public void
+    refuses_to_share_a_given_transport_between_sender_threads() throws Exception {
+
+        final NonBlockingStatsDClientBuilder builder = new NonBlockingStatsDClientBuilder()
+                .withTransport(new MemoryTransport())
+                .withSenderThreads(2);
+        try {
+            builder.build();
+            fail("expected the builder to refuse a shared transport");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(timeout=10000) public void
+    packs_payloads_up_to_max_size_on_message_boundaries() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final List<String> errors = new ArrayList<String>();
+        final NonBlockingStatsDClient small_payload_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withMaxPayloadSize(40)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        synchronized (errors) {
+                            errors.add(e.getMessage());
+                        }
+                    }
+                })
+                .build();
+        try {
+            for (int i = 0; i < 10; i++) {
+                small_payload_client.count("mycount" + i, i);
+            }
+            small_payload_client.count("a.metric.name.which.does.not.fit.in.a.payload", 1);
+            small_payload_client.count("last", 1);
+            while (!transport.messages().contains("last:1|c")) {
+                Thread.sleep(10L);
+            }
+
+            for (String payload : transport.payloads()) {
+                assertThat(payload.length(), lessThanOrEqualTo(40));
+            }
+            assertThat(transport.messages(), contains(
+                    "mycount0:0|c", "mycount1:1|c", "mycount2:2|c", "mycount3:3|c", "mycount4:4|c",
+                    "mycount5:5|c", "mycount6:6|c", "mycount7:7|c", "mycount8:8|c", "mycount9:9|c", "last:1|c"));
+            synchronized (errors) {
+                assertThat(errors, contains("Dropped a message of 49 bytes, more than the maximum payload size of 40 bytes"));
+            }
+        } finally {
+            small_payload_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    packs_thread_local_packets_up_to_max_size_on_message_boundaries() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final List<String> errors = new ArrayList<String>();
+        final NonBlockingStatsDClient packing_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withMaxPayloadSize(40)
+                .withThreadLocalPackets(true)
+                .withLinger(1, TimeUnit.MINUTES)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        synchronized (errors) {
+                            errors.add(e.getMessage());
+                        }
+                    }
+                })
+                .build();
+        for (int i = 0; i < 10; i++) {
+            packing_client.count("mycount" + i, i);
+        }
+        packing_client.count("a.metric.name.which.does.not.fit.in.a.payload", 1);
+        packing_client.count("last", 1);
+        packing_client.stop();
+
+        for (String payload : transport.payloads()) {
+            assertThat(payload.length(), lessThanOrEqualTo(40));
+        }
+        assertThat(transport.messages(), contains(
+                "mycount0:0|c", "mycount1:1|c", "mycount2:2|c", "mycount3:3|c", "mycount4:4|c",
+                "mycount5:5|c", "mycount6:6|c", "mycount7:7|c", "mycount8:8|c", "mycount9:9|c", "last:1|c"));
+        synchronized (errors) {
+            assertThat(errors, contains("Dropped a message of 49 bytes, more than the maximum payload size of 40 bytes"));
+        }
+        assertEquals(11, packing_client.getTelemetry().getMetricsSent());
+        assertEquals(1, packing_client.getTelemetry().getMetricsDropped());
+    }
+
+    @Test(timeout=10000) public void
+    queues_thread_local_packets_once_they_have_lingered() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient packing_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withThreadLocalPackets(true)
+                .withLinger(50, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            packing_client.count("mycount", 1);
+            packing_client.count("mycount", 2);
+            while (transport.payloadCount() < 1) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(transport.payloads(), contains("mycount:1|c\nmycount:2|c"));
+        } finally {
+            packing_client.stop();
+        }
+    }
+
+    @Test public void
+    opens_its_socket_on_the_sender_thread_when_started_lazily() throws Exception {
+
+        final NonBlockingStatsDClient lazy_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withHostname("localhost")
+                .withPort(STATSD_SERVER_PORT)
+                .withLazyStart(true)
+                .build();
+        try {
+            lazy_client.count("mycount", 24);
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c"));
+        } finally {
+            lazy_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    resolves_the_host_name_again_when_it_fails_to_resolve_on_lazy_start() throws Exception {
+
+        final AtomicInteger resolutions = new AtomicInteger();
+        final NonBlockingStatsDClient lazy_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withHostname("statsd.example")
+                .withPort(STATSD_SERVER_PORT)
+                .withAddressResolver(new AddressResolver() {
+                    @Override public InetSocketAddress resolve(String hostname, int port) throws IOException {
+                        if (resolutions.incrementAndGet() == 1) {
+                            throw new UnknownHostException(hostname);
+                        }
+                        return new InetSocketAddress("127.0.0.1", port);
+                    }
+                })
+                .withLazyStart(true)
+                .build();
+        try {
+            lazy_client.count("mycount", 24);
+            server.waitForMessage();
+
+            assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c"));
+            assertEquals(2, resolutions.get());
+        } finally {
+            lazy_client.stop();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    keeps_messages_queued_until_its_lazy_transport_opens() throws Exception {
+
+        final MemoryTransport memory = new MemoryTransport();
+        final AtomicInteger attempts = new AtomicInteger();
+        final NonBlockingStatsDClient lazy_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(new LazyTransport(new Callable<Transport>() {
+                    @Override public Transport call() throws IOException {
+                        if (attempts.incrementAndGet() < 3) {
+                            throw new IOException("no route to host");
+                        }
+                        return memory;
+                    }
+                }, 512, 20, TimeUnit.MILLISECONDS))
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                    }
+                })
+                .build();
+        lazy_client.count("mycount", 1);
+        lazy_client.count("mycount", 2);
+        while (memory.messages().size() < 2) {
+            Thread.sleep(10L);
+        }
+        final ShutdownReport report = lazy_client.stop(1, TimeUnit.SECONDS);
+
+        assertEquals(3, attempts.get());
+        assertThat(memory.messages(), contains("mycount:1|c", "mycount:2|c"));
+        assertEquals(0, report.getDiscardedMessages());
+    }
+
+    @Test(timeout=10000) public void
+    discards_what_is_queued_when_its_lazy_transport_never_opens() throws Exception {
+
+        final NonBlockingStatsDClient lazy_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(new LazyTransport(new Callable<Transport>() {
+                    @Override public Transport call() throws IOException {
+                        throw new IOException("no route to host");
+                    }
+                }, 512))
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                    }
+                })
+                .build();
+        lazy_client.count("mycount", 1);
+        lazy_client.count("mycount", 2);
+        final ShutdownReport report = lazy_client.stop(1, TimeUnit.SECONDS);
+
+        assertEquals(0, report.getFlushedMessages());
+        assertEquals(2, report.getDiscardedMessages());
+        assertEquals(0, lazy_client.getTelemetry().getMetricsDropped());
+    }
+
+    @Test public void
+    builds_a_lazily_started_client_whose_transport_cannot_be_opened() throws Exception {
+
+        final List<Exception> errors = new ArrayList<Exception>();
+        final NonBlockingStatsDClient lazy_client = new NonBlockingStatsDClientBuilder()
+                .withUnixSocket("/nonexistent/dsd.socket")
+                .withLazyStart(true)
+                .withLinger(1, TimeUnit.MINUTES)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                })
+                .build();
+        lazy_client.count("mycount", 24);
+        final ShutdownReport report = lazy_client.stop(1, TimeUnit.SECONDS);
+
+        assertEquals(0, report.getFlushedMessages());
+        assertEquals(1, report.getDiscardedMessages());
+        synchronized (errors) {
+            assertThat(errors.size(), greaterThan(0));
+        }
+    }
+
+    @Test(timeout=10000) public void
+    counts_what_it_cannot_send_to_a_host_which_does_not_resolve() throws Exception {
+
+        final List<Exception> errors = new ArrayList<Exception>();
+        final NonBlockingStatsDClient unresolved_client = new NonBlockingStatsDClientBuilder()
+                .withHostname("no-such-host.invalid")
+                .withPort(STATSD_SERVER_PORT)
+                .withLinger(1, TimeUnit.MINUTES)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                })
+                .build();
+        for (int i = 0; i < 10; i++) {
+            unresolved_client.count("mycount", i);
+        }
+        final ShutdownReport report = unresolved_client.stop(1, TimeUnit.SECONDS);
+
+        assertEquals(0, report.getFlushedMessages());
+        assertEquals(10, report.getDiscardedMessages());
+        final Telemetry telemetry = unresolved_client.getTelemetry();
+        assertEquals(0, telemetry.getMetricsSent());
+        assertEquals(10, telemetry.getMetricsDropped());
+        assertEquals(1, telemetry.getPacketSendErrors());
+        synchronized (errors) {
+            assertThat(errors.size(), greaterThan(0));
+        }
+    }
+
+    @Test public void
+    counts_what_it_sends_in_its_telemetry() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient telemetry_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .build();
+        telemetry_client.count("mycount", 1);
+        telemetry_client.count("mycount", 2);
+        telemetry_client.stop();
+
+        final Telemetry telemetry = telemetry_client.getTelemetry();
+        assertEquals(2, telemetry.getMetricsSent());
+        assertEquals(transport.payloadCount(), telemetry.getPacketsSent());
+        assertEquals(transport.byteCount(), telemetry.getBytesSent());
+        assertEquals(0, telemetry.getPacketSendErrors());
+        assertEquals(0, telemetry.getQueueOverflowDrops());
+        assertEquals(0, telemetry.getQueueDepth());
+    }
+
+    @Test public void
+    reports_its_telemetry_through_its_own_transport() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient telemetry_client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withTransport(transport)
+                .withTelemetryInterval(1, TimeUnit.HOURS)
+                .build();
+        telemetry_client.count("mycount", 1);
+        while (transport.payloadCount() < 1) {
+            Thread.sleep(10L);
+        }
+        telemetry_client.stop();
+
+        assertThat(transport.messages(), hasItems(
+                "my.prefix.mycount:1|c",
+                "datadog.dogstatsd.client.metrics:1|c|#client_transport:custom,client:java",
+                "datadog.dogstatsd.client.bytes_sent:21|c|#client_transport:custom,client:java",
+                "datadog.dogstatsd.client.metrics_dropped_queue:0|c|#client_transport:custom,client:java",
+                "datadog.dogstatsd.client.queue_depth:0|g|#client_transport:custom,client:java"));
+    }
+
+    @Test public void
+    sends_event() throws Exception {
+
+        final Event event = Event.builder()
+                .withTitle("title1")
+                .withText("text1\nline2")
+                .withDate(1234567000)
+                .withHostname("host1")
+                .withPriority(Event.Priority.LOW)
+                .withAggregationKey("key1")
+                .withAlertType(Event.AlertType.ERROR)
+                .build();
+        client.recordEvent(event, "foo:bar", "baz");
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains(
+                "_e{16,12}:my.prefix.title1|text1\\nline2|d:1234567|h:host1|k:key1|p:low|t:error|#baz,foo:bar"));
+    }
+
+    @Test public void
+    sends_service_check() throws Exception {
+
+        final ServiceCheck sc = ServiceCheck.builder()
+                .withName("my_check.name")
+                .withStatus(ServiceCheck.Status.WARNING)
+                .withMessage("\nm:test")
+                .withHostname("i-abcd1234")
+                .withTags(new String[] {"key1:val1", "key2:val2"})
+                .withTimestamp(1420740000)
+                .build();
+        client.recordServiceCheckRun(sc);
+        server.waitForMessage();
+
+        assertThat(server.messagesReceived(), contains(
+                "_sc|my_check.name|1|d:1420740000|h:i-abcd1234|#key2:val2,key1:val1|m:\\nm\\:test"));
+    }
+
+    @Test public void
+    reports_a_service_check_without_a_status_to_the_error_handler() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final List<String> errors = new ArrayList<String>();
+        final NonBlockingStatsDClient check_client = new NonBlockingStatsDClientBuilder()
+                .withTransport(transport)
+                .withErrorHandler(new StatsDClientErrorHandler() {
+                    @Override public void handle(Exception e) {
+                        errors.add(e.getMessage());
+                    }
+                })
+                .build();
+        check_client.recordServiceCheckRun(ServiceCheck.builder().withName("my_check").build());
+        check_client.stop();
+
+        assertThat(errors, contains("Service check my_check has no status"));
+        assertEquals(0, transport.payloadCount());
+    }
+
+    @Test(timeout=10000) public void
+    sends_values_through_handles() throws Exception {
+
+        final MemoryTransport transport = new MemoryTransport();
+        final NonBlockingStatsDClient handle_client = new NonBlockingStatsDClient("my.prefix", transport, new String[] {"app:bar"}, null);
+        try {
+            final String[] tags = {"foo:bar", "baz"};
+            final Counter counter = handle_client.counter("mycount", tags);
+            tags[0] = "changed";
+            counter.increment();
+            counter.count(5);
+            handle_client.gauge("mygauge").record(0.5);
+            handle_client.timer("mytime").record(25);
+            handle_client.histogram("myhist", "foo:bar").record(7);
+            while (transport.messages().size() < 5) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(transport.messages(), contains(
+                    "my.prefix.mycount:1|c|#app:bar,baz,foo:bar",
+                    "my.prefix.mycount:5|c|#app:bar,baz,foo:bar",
+                    "my.prefix.mygauge:0.500000|g|#app:bar",
+                    "my.prefix.mytime:25|ms|#app:bar",
+                    "my.prefix.myhist:7|h|#app:bar,foo:bar"));
+        } finally {
+            handle_client.stop();
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+package com.timgroup.statsd;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.01;
+    private static final double[] QUANTILES = {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1};
+
+    @Test public void
+    reports_nan_when_empty() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 2048);
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        assertTrue(Double.isNaN(sketch.average()));
+    }
+
+    @Test public void
+    tracks_count_min_max_and_average() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 2048);
+        sketch.add(1);
+        sketch.add(2);
+        sketch.add(6);
+        assertEquals(3, sketch.count());
+        assertEquals(1, sketch.min(), 0);
+        assertEquals(6, sketch.max(), 0);
+        assertEquals(3, sketch.average(), 1e-12);
+    }
+
+    @Test public void
+    estimates_quantiles_within_relative_accuracy() throws Exception {
+        Random random = new Random(7);
+        double[] values = new double[20000];
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 2048);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 3) * (random.nextInt(10) == 0 ? -1 : 1);
+            sketch.add(values[i]);
+        }
+        assertQuantiles(values, sketch);
+    }
+
+    @Test public void
+    merges_into_the_same_estimates() throws Exception {
+        Random random = new Random(11);
+        double[] values = new double[10000];
+        QuantileSketch left = new QuantileSketch(ACCURACY, 2048);
+        QuantileSketch right = new QuantileSketch(ACCURACY, 2048);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(5000) * (i % 2 == 0 ? 1 : 0.001);
+            (i % 3 == 0 ? left : right).add(values[i]);
+        }
+        left.merge(right);
+        assertEquals(values.length, left.count());
+        assertQuantiles(values, left);
+    }
+
+    @Test public void
+    bounds_memory_by_collapsing_the_smallest_buckets() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 64);
+        for (int i = 1; i <= 1000; i++) {
+            sketch.add(Math.pow(1.1, i));
+        }
+        assertEquals(1000, sketch.count());
+        /* The upper range keeps its accuracy */
+        assertEquals(Math.pow(1.1, 999), sketch.quantile(0.9999), Math.pow(1.1, 999) * ACCURACY);
+        assertEquals(Math.pow(1.1, 990), sketch.quantile(0.99), Math.pow(1.1, 990) * ACCURACY);
+    }
+
+    @Test public void
+    reuses_the_sketch_after_clear() throws Exception {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 2048);
+        sketch.add(1000);
+        sketch.clear();
+        sketch.add(3);
+        assertEquals(1, sketch.count());
+        assertEquals(3, sketch.quantile(0.5), 3 * ACCURACY);
+    }
+
+    private static void assertQuantiles(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double expected = sorted[(int) (q * (sorted.length - 1))];
+            assertEquals("quantile " + q, expected, sketch.quantile(q), Math.abs(expected) * ACCURACY + 1e-9);
+        }
+    }
+}
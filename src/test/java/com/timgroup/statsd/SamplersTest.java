@@ -0,0 +1,67 @@
+package com.timgroup.statsd;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SamplersTest {
+
+    @Test public void
+    samples_at_roughly_the_given_rate() throws Exception {
+        Sampler sampler = Samplers.random();
+        int kept = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (sampler.sample(0.25)) {
+                kept++;
+            }
+        }
+
+        assertThat(kept / 100000.0, closeTo(0.25, 0.01));
+        assertFalse(sampler.sample(0));
+    }
+
+    @Test public void
+    seeded_sampler_repeats_its_decisions() throws Exception {
+        boolean[] first = decisions(Samplers.seeded(42));
+        boolean[] second = decisions(Samplers.seeded(42));
+
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i], second[i]);
+        }
+    }
+
+    @Test public void
+    trace_id_sampler_keeps_whole_traces() throws Exception {
+        final long[] traceId = new long[1];
+        Sampler sampler = Samplers.byTraceId(new Samplers.TraceIdSource() {
+            @Override public long currentTraceId() {
+                return traceId[0];
+            }
+        });
+
+        int kept = 0;
+        for (traceId[0] = 1; traceId[0] <= 100000; traceId[0]++) {
+            boolean decision = sampler.sample(0.5);
+            assertEquals(decision, sampler.sample(0.5));
+            /* A trace kept at some rate is kept at every higher rate */
+            if (decision) {
+                assertTrue(sampler.sample(0.75));
+                kept++;
+            }
+        }
+
+        assertThat(kept / 100000.0, closeTo(0.5, 0.01));
+    }
+
+    private static boolean[] decisions(Sampler sampler) {
+        boolean[] decisions = new boolean[1000];
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = sampler.sample(0.5);
+        }
+        return decisions;
+    }
+}
@@ -0,0 +1,47 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+
+    @Test public void
+    sums_and_resets() throws Exception {
+        StripedCounter counter = new StripedCounter();
+        counter.add(3);
+        counter.add(-1);
+        assertEquals(2, counter.sumThenReset());
+        assertEquals(0, counter.sumThenReset());
+    }
+
+    @Test(timeout=30000) public void
+    loses_no_additions_under_contention_and_concurrent_resets() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        final int threads = 16;
+        final int perThread = 200000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        counter.add(1);
+                    }
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long total = 0;
+        while (done.getCount() > 0) {
+            total += counter.sumThenReset();
+        }
+        total += counter.sumThenReset();
+
+        assertEquals((long) threads * perThread, total);
+    }
+}
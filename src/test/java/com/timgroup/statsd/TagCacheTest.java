@@ -0,0 +1,68 @@
+package com.timgroup.statsd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TagCacheTest {
+
+    @Test public void
+    renders_tags_like_the_clients() throws Exception {
+        TagCache cache = new TagCache(new String[] {"instance:foo", "app:bar"}, 16);
+
+        assertEquals("|#app:bar,instance:foo", cache.renderString(null));
+        assertEquals("|#app:bar,instance:foo,baz,foo:bar", cache.renderString(new String[] {"foo:bar", "baz"}));
+        assertEquals("|#app:bar,instance:foo,baz,foo:bar", new String(cache.render(new String[] {"foo:bar", "baz"}), "UTF-8"));
+        assertEquals("", new TagCache(new String[0], 16).renderString(new String[0]));
+        assertEquals("|#baz", new TagCache(null, 0).renderString(new String[] {"baz"}));
+    }
+
+    @Test public void
+    puts_tags_into_an_encoder_with_or_without_caching() throws Exception {
+        for (int capacity : new int[] {0, 16}) {
+            TagCache cache = new TagCache(new String[] {"app:bar"}, capacity);
+            MessageEncoder encoder = new MessageEncoder().putString("foo:1|c");
+            cache.putTags(encoder, new String[] {"foo:bar", "baz"});
+            cache.putTags(encoder, new String[] {"foo:bar", "baz"});
+            cache.putTags(encoder, null);
+
+            assertEquals("foo:1|c|#app:bar,baz,foo:bar|#app:bar,baz,foo:bar|#app:bar", encoder.toString());
+        }
+    }
+
+    @Test public void
+    reuses_the_rendering_of_equal_tag_sets() throws Exception {
+        TagCache cache = new TagCache(null, 16);
+        String[] tags = {"foo:bar"};
+
+        byte[] first = cache.render(tags);
+        assertSame(first, cache.render(tags));
+        assertSame(first, cache.render(new String[] {"foo:bar"}));
+        cache.putTags(new MessageEncoder(), new String[] {"foo:bar"});
+        assertSame(first, cache.render(tags));
+        assertEquals(1, cache.size());
+    }
+
+    @Test public void
+    renders_again_when_a_cached_array_is_modified() throws Exception {
+        TagCache cache = new TagCache(null, 16);
+        String[] tags = {"foo:bar"};
+
+        assertEquals("|#foo:bar", cache.renderString(tags));
+        tags[0] = "foo:baz";
+        assertEquals("|#foo:baz", cache.renderString(tags));
+    }
+
+    @Test public void
+    holds_at_most_its_capacity() throws Exception {
+        TagCache cache = new TagCache(null, 2);
+        for (int i = 0; i < 100; i++) {
+            cache.render(new String[] {"tag" + i});
+        }
+
+        assertTrue(cache.size() <= 2);
+        assertEquals("|#tag99", cache.renderString(new String[] {"tag99"}));
+    }
+}
@@ -0,0 +1,51 @@
+package com.timgroup.statsd;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+public class TransportOpenerTest {
+
+    @Test public void
+    opens_a_udp_transport_right_away() throws Exception {
+        final Transport transport = new TransportOpener("localhost", 17254, null, 512,
+                AddressResolver.SYSTEM, 0, TimeUnit.SECONDS).open(false);
+        try {
+            assertThat(transport, instanceOf(UdpTransport.class));
+            assertEquals(512, transport.maxPayloadSize());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test public void
+    sizes_a_lazy_transport_for_a_remote_server() throws Exception {
+        final Transport transport = new TransportOpener("localhost", 17254, null, 0,
+                AddressResolver.SYSTEM, 0, TimeUnit.SECONDS).open(true);
+        try {
+            assertThat(transport, instanceOf(LazyTransport.class));
+            assertNull(((LazyTransport) transport).opened());
+            assertEquals(UdpTransport.DEFAULT_REMOTE_PAYLOAD_SIZE, transport.maxPayloadSize());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test public void
+    opens_a_unix_socket_transport_when_given_a_path() throws Exception {
+        assumeTrue(UnixSocketTransport.isSupported());
+        final Transport transport = new TransportOpener(null, 0, "/nonexistent/dsd.socket", 0,
+                AddressResolver.SYSTEM, 0, TimeUnit.SECONDS).open(false);
+        try {
+            assertThat(transport, instanceOf(UnixSocketTransport.class));
+            assertEquals(UnixSocketTransport.DEFAULT_PAYLOAD_SIZE, transport.maxPayloadSize());
+        } finally {
+            transport.close();
+        }
+    }
+}
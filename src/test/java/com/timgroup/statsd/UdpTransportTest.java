@@ -0,0 +1,211 @@
+package com.timgroup.statsd;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UdpTransportTest {
+
+    @Test public void
+    packs_larger_payloads_over_loopback() throws Exception {
+        UdpTransport transport = new UdpTransport("127.0.0.1", 8125);
+        assertEquals(UdpTransport.DEFAULT_LOOPBACK_PAYLOAD_SIZE, transport.maxPayloadSize());
+        transport.close();
+    }
+
+    @Test public void
+    keeps_payloads_within_an_ethernet_frame_for_remote_hosts() throws Exception {
+        UdpTransport transport = new UdpTransport("192.0.2.1", 8125);
+        assertEquals(UdpTransport.DEFAULT_REMOTE_PAYLOAD_SIZE, transport.maxPayloadSize());
+        transport.close();
+    }
+
+    @Test public void
+    uses_configured_payload_size() throws Exception {
+        UdpTransport transport = new UdpTransport("127.0.0.1", 8125, 4096);
+        assertEquals(4096, transport.maxPayloadSize());
+        transport.close();
+    }
+
+    @Test public void
+    moves_to_the_new_address_of_the_host_in_the_background() throws Exception {
+        final DatagramSocket old_server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final DatagramSocket new_server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final AtomicReference<InetSocketAddress> current =
+                new AtomicReference<InetSocketAddress>((InetSocketAddress) old_server.getLocalSocketAddress());
+        final AddressResolver resolver = new AddressResolver() {
+            @Override public InetSocketAddress resolve(String hostname, int port) {
+                return current.get();
+            }
+        };
+        final UdpTransport transport = new UdpTransport("statsd.example", 8125, 0, resolver, 10, TimeUnit.MILLISECONDS);
+        try {
+            transport.write(ByteBuffer.wrap("before".getBytes("UTF-8")));
+            assertEquals("before", receive(old_server));
+
+            current.set((InetSocketAddress) new_server.getLocalSocketAddress());
+            while (!new_server.getLocalSocketAddress().equals(transport.getAddress())) {
+                Thread.sleep(10L);
+            }
+            transport.write(ByteBuffer.wrap("after".getBytes("UTF-8")));
+            assertEquals("after", receive(new_server));
+        } finally {
+            transport.close();
+            old_server.close();
+            new_server.close();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    leaves_a_host_the_resolver_failed_on_to_the_resolver() throws Exception {
+        final DatagramSocket server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final AtomicBoolean resolvable = new AtomicBoolean();
+        final AddressResolver resolver = new AddressResolver() {
+            @Override public InetSocketAddress resolve(String hostname, int port) throws UnknownHostException {
+                if (!resolvable.get()) {
+                    throw new UnknownHostException(hostname);
+                }
+                return (InetSocketAddress) server.getLocalSocketAddress();
+            }
+        };
+        final UdpTransport transport = new UdpTransport("statsd.example", 8125, 0, resolver, 10, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(transport.getAddress().isUnresolved());
+            assertEquals("statsd.example", transport.getAddress().getHostString());
+
+            resolvable.set(true);
+            while (transport.getAddress().isUnresolved()) {
+                Thread.sleep(10L);
+            }
+            transport.write(ByteBuffer.wrap("resolved".getBytes("UTF-8")));
+            assertEquals("resolved", receive(server));
+        } finally {
+            transport.close();
+            server.close();
+        }
+    }
+
+    @Test public void
+    moves_transports_sharing_a_resolver_thread() throws Exception {
+        final DatagramSocket old_server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final DatagramSocket new_server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final AtomicReference<InetSocketAddress> current =
+                new AtomicReference<InetSocketAddress>((InetSocketAddress) old_server.getLocalSocketAddress());
+        final AddressResolver resolver = new AddressResolver() {
+            @Override public InetSocketAddress resolve(String hostname, int port) {
+                return current.get();
+            }
+        };
+        final ScheduledExecutorService resolverThread = UdpTransport.newResolverThread("statsd.example");
+        final UdpTransport first = new UdpTransport("statsd.example", 8125, 0, resolver, 10, TimeUnit.MILLISECONDS, resolverThread);
+        final UdpTransport second = new UdpTransport("statsd.example", 8125, 0, resolver, 10, TimeUnit.MILLISECONDS, resolverThread);
+        try {
+            current.set((InetSocketAddress) new_server.getLocalSocketAddress());
+            while (!new_server.getLocalSocketAddress().equals(first.getAddress())
+                    || !new_server.getLocalSocketAddress().equals(second.getAddress())) {
+                Thread.sleep(10L);
+            }
+            first.close();
+            assertFalse(resolverThread.isShutdown());
+            second.write(ByteBuffer.wrap("after".getBytes("UTF-8")));
+            assertEquals("after", receive(new_server));
+        } finally {
+            first.close();
+            second.close();
+            resolverThread.shutdownNow();
+            old_server.close();
+            new_server.close();
+        }
+    }
+
+    @Test(timeout=10000) public void
+    keeps_concurrent_senders_going_while_it_moves() throws Exception {
+        final DatagramSocket[] servers = {
+                new DatagramSocket(0, InetAddress.getByName("127.0.0.1")),
+                new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))};
+        final AtomicReference<InetSocketAddress> current =
+                new AtomicReference<InetSocketAddress>((InetSocketAddress) servers[0].getLocalSocketAddress());
+        final AddressResolver resolver = new AddressResolver() {
+            @Override public InetSocketAddress resolve(String hostname, int port) {
+                return current.get();
+            }
+        };
+        final UdpTransport transport = new UdpTransport("statsd.example", 8125, 0, resolver, 1, TimeUnit.MILLISECONDS);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread[] senders = new Thread[4];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    final ByteBuffer payload = ByteBuffer.allocate(16);
+                    while (running.get()) {
+                        try {
+                            payload.clear();
+                            transport.write(payload);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                }
+            });
+            senders[i].start();
+        }
+        try {
+            for (int i = 1; i <= 50; i++) {
+                current.set((InetSocketAddress) servers[i % 2].getLocalSocketAddress());
+                Thread.sleep(5L);
+            }
+        } finally {
+            running.set(false);
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            transport.close();
+            servers[0].close();
+            servers[1].close();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test public void
+    keeps_the_last_address_while_the_host_does_not_resolve() throws Exception {
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1", 8125);
+        final AtomicReference<InetSocketAddress> current = new AtomicReference<InetSocketAddress>(address);
+        final AddressResolver resolver = new AddressResolver() {
+            @Override public InetSocketAddress resolve(String hostname, int port) throws IOException {
+                if (current.get() == null) {
+                    throw new UnknownHostException(hostname);
+                }
+                return current.get();
+            }
+        };
+        final UdpTransport transport = new UdpTransport("statsd.example", 8125, 0, resolver, 0, TimeUnit.MILLISECONDS);
+        current.set(null);
+
+        assertFalse(transport.resolve());
+        assertEquals(address, transport.getAddress());
+        transport.close();
+    }
+
+    private static String receive(DatagramSocket server) throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[256], 256);
+        server.setSoTimeout(5000);
+        server.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), "UTF-8");
+    }
+}
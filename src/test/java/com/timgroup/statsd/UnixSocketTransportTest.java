@@ -0,0 +1,98 @@
+package com.timgroup.statsd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assume.assumeTrue;
+
+public class UnixSocketTransportTest {
+
+    private File socketFile;
+    private DummyUnixStatsDServer server;
+
+    @Before
+    public void start() throws Exception {
+        assumeTrue(UnixSocketTransport.isSupported());
+        socketFile = File.createTempFile("statsd", ".sock");
+        server = new DummyUnixStatsDServer(socketFile);
+    }
+
+    @After
+    public void stop() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test(timeout=5000) public void
+    sends_each_payload_as_one_frame() throws Exception {
+        UnixSocketTransport transport = new UnixSocketTransport(socketFile.getPath());
+        transport.write(ByteBuffer.wrap("a:1|c\nb:2|c".getBytes("UTF-8")));
+        transport.write(ByteBuffer.wrap("c:3|c".getBytes("UTF-8")));
+
+        while (server.messagesReceived().size() < 3) {
+            Thread.sleep(10);
+        }
+        transport.close();
+
+        assertThat(server.messagesReceived(), contains("a:1|c", "b:2|c", "c:3|c"));
+    }
+
+    @Test(timeout=5000) public void
+    sends_a_batch_of_payloads_as_separate_frames() throws Exception {
+        UnixSocketTransport transport = new UnixSocketTransport(socketFile.getPath());
+        ByteBuffer[] payloads = new ByteBuffer[12];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = ByteBuffer.wrap(("m" + i + ":" + i + "|c").getBytes("UTF-8"));
+        }
+        transport.write(payloads, 1, 10);
+
+        while (server.messagesReceived().size() < 10) {
+            Thread.sleep(10);
+        }
+        transport.close();
+
+        assertThat(server.messagesReceived(), contains(
+                "m1:1|c", "m2:2|c", "m3:3|c", "m4:4|c", "m5:5|c", "m6:6|c", "m7:7|c", "m8:8|c", "m9:9|c", "m10:10|c"));
+    }
+
+    @Test(timeout=5000) public void
+    reconnects_when_the_agent_restarts() throws Exception {
+        UnixSocketTransport transport = new UnixSocketTransport(socketFile.getPath());
+        transport.write(ByteBuffer.wrap("a:1|c".getBytes("UTF-8")));
+        server.waitForMessage();
+
+        server.close();
+        server = new DummyUnixStatsDServer(socketFile);
+        /* Writes into the dead connection may be buffered before the failure shows */
+        while (server.messagesReceived().isEmpty()) {
+            try {
+                transport.write(ByteBuffer.wrap("b:2|c".getBytes("UTF-8")));
+            } catch (IOException expected) {
+            }
+            Thread.sleep(10);
+        }
+        transport.close();
+
+        assertThat(server.messagesReceived().subList(0, 1), contains("b:2|c"));
+    }
+
+    @Test(timeout=5000) public void
+    sends_from_non_blocking_client() throws Exception {
+        NonBlockingStatsDClient client = new NonBlockingStatsDClientBuilder()
+                .withPrefix("my.prefix")
+                .withUnixSocket(socketFile.getPath())
+                .build();
+        client.count("mycount", 24);
+        server.waitForMessage();
+        client.stop();
+
+        assertThat(server.messagesReceived(), contains("my.prefix.mycount:24|c"));
+    }
+}